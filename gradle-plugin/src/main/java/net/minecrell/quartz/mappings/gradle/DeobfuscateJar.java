@@ -0,0 +1,192 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.gradle;
+
+import net.minecrell.quartz.mappings.MappedClass;
+import net.minecrell.quartz.mappings.loader.Mappings;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.transformer.MappingsTransformer;
+import net.minecrell.quartz.mappings.transformer.OutputProfile;
+import net.minecrell.quartz.mappings.transformer.UnmappedMemberFilter;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Deobfuscates one or more jars, the output jars are written to the output directory using the same file name
+public class DeobfuscateJar extends DefaultTask {
+
+    private FileCollection jars;
+    private FileCollection libraries;
+    private FileCollection mappings;
+    private File outputDir;
+    private OutputProfile.Type profile = OutputProfile.Type.FULL;
+    private List<String> leanPackages = new ArrayList<>();
+    private List<String> excludedPackages = new ArrayList<>(UnmappedMemberFilter.DEFAULT_EXCLUDED_PACKAGES);
+    private long memoryBudget;
+
+    @InputFiles
+    public FileCollection getJars() {
+        return this.jars;
+    }
+
+    public void setJars(Object... jars) {
+        this.jars = getProject().files(jars);
+    }
+
+    // Dependencies of the jars, needed to resolve inherited members. They are not deobfuscated themselves.
+    @InputFiles
+    public FileCollection getLibraries() {
+        return this.libraries != null ? this.libraries : getProject().files();
+    }
+
+    public void setLibraries(Object... libraries) {
+        this.libraries = getProject().files(libraries);
+    }
+
+    // Later mapping files override classes from the previous ones
+    @InputFiles
+    public FileCollection getMappings() {
+        return this.mappings;
+    }
+
+    public void setMappings(Object... mappings) {
+        this.mappings = getProject().files(mappings);
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return this.outputDir;
+    }
+
+    public void setOutputDir(Object outputDir) {
+        this.outputDir = getProject().file(outputDir);
+    }
+
+    // FULL, LEAN or STUB, see OutputProfile
+    @Input
+    public OutputProfile.Type getProfile() {
+        return this.profile;
+    }
+
+    public void setProfile(Object profile) {
+        this.profile = profile instanceof OutputProfile.Type ? (OutputProfile.Type) profile
+                : OutputProfile.Type.valueOf(profile.toString().toUpperCase(Locale.ENGLISH));
+    }
+
+    // Packages (e.g. net/minecraft/) that are stripped of debug information with the LEAN profile, all classes if empty
+    @Input
+    public List<String> getLeanPackages() {
+        return this.leanPackages;
+    }
+
+    public void setLeanPackages(String... leanPackages) {
+        this.leanPackages = new ArrayList<>(Arrays.asList(leanPackages));
+    }
+
+    // Packages (e.g. java/) that are assumed to have no mappings, classes in them are never read from the libraries
+    @Input
+    public List<String> getExcludedPackages() {
+        return this.excludedPackages;
+    }
+
+    public void setExcludedPackages(String... excludedPackages) {
+        this.excludedPackages = new ArrayList<>(Arrays.asList(excludedPackages));
+    }
+
+    // Limits the memory used for the resolved class hierarchy (in bytes), the rest is moved to a temporary file. 0 for no limit
+    // This doesn't change the output, so it is not an input of the task
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public File getOutput(File jar) {
+        return new File(getOutputDir(), jar.getName());
+    }
+
+    private OutputProfile createProfile() {
+        switch (getProfile()) {
+            case LEAN:
+                return OutputProfile.lean(getLeanPackages());
+            case STUB:
+                return OutputProfile.STUB;
+            default:
+                return OutputProfile.FULL;
+        }
+    }
+
+    @TaskAction
+    public void deobfuscate() throws IOException {
+        Map<String, MappedClass> mappings = new HashMap<>();
+        for (File file : getMappings()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                mappings.putAll(Mappings.read(reader));
+            }
+        }
+
+        Mapper mapper = Mappings.createMapper(mappings);
+
+        Map<Path, Path> jars = new LinkedHashMap<>();
+        Set<Path> outputs = new HashSet<>();
+        for (File jar : getJars()) {
+            // Jars from different directories may have the same name, they would overwrite each other's output
+            Path output = getOutput(jar).toPath();
+            if (!outputs.add(output)) {
+                throw new IllegalArgumentException("Multiple jars would be written to " + output + ", rename " + jar);
+            }
+
+            jars.put(jar.toPath(), output);
+        }
+
+        List<Path> libraries = new ArrayList<>();
+        for (File library : getLibraries()) {
+            libraries.add(library.toPath());
+        }
+
+        // Jars are deobfuscated in parallel and share the same class hierarchy
+        MappingsTransformer.deobfuscate(jars, libraries, mapper, createProfile(), getExcludedPackages(), getMemoryBudget());
+    }
+
+}
@@ -32,20 +32,24 @@
 import net.minecrell.quartz.mappings.Constructor;
 import net.minecrell.quartz.mappings.MappedClass;
 import net.minecrell.quartz.mappings.Mapping;
+import net.minecrell.quartz.mappings.loader.CompiledMappings;
 import net.minecrell.quartz.mappings.loader.Mappings;
 import net.minecrell.quartz.mappings.mapper.ClassMapper;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.objectweb.asm.commons.Remapper;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.io.Writer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
@@ -60,6 +64,7 @@
 import javax.lang.model.element.VariableElement;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 
 @SupportedAnnotationTypes({
@@ -67,132 +72,303 @@
         "net.minecrell.quartz.mappings.Mapping"
 })
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
-@SupportedOptions("baseJar")
+@SupportedOptions({"baseJar", "mapperClass"})
 public class MappingsGeneratorProcessor extends AbstractProcessor {
 
     private Path baseJar;
+    private MemberIndex baseIndex;
+
+    // Fully qualified name of the class with the compiled mappings, none is generated if not set
+    private String mapperClass;
+
+    // Elements are not guaranteed to stay valid between rounds, so only remember their names
+    private final Set<String> mappingClasses = new LinkedHashSet<>();
+    private boolean generated;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
 
-        /*Map<String, String> options = processingEnv.getOptions();
-        checkArgument(options.containsKey("baseJar"), "Missing baseJar argument");
-        this.baseJar = Paths.get(options.get("baseJar"));
-        checkArgument(Files.exists(baseJar), "Base JAR does not exist");*/
+        // The base jar is only needed if some of the mappings should be detected automatically
+        String baseJar = processingEnv.getOptions().get("baseJar");
+        if (baseJar != null) {
+            this.baseJar = Paths.get(baseJar);
+            checkArgument(Files.exists(this.baseJar), "Base JAR does not exist: %s", this.baseJar);
+        }
+
+        this.mapperClass = processingEnv.getOptions().get("mapperClass");
+    }
+
+    private MemberIndex getBaseIndex() throws IOException {
+        if (this.baseIndex == null) {
+            checkArgument(this.baseJar != null, "Missing baseJar argument for mapping detection");
+            this.baseIndex = MemberIndex.get(this.baseJar);
+        }
+
+        return this.baseIndex;
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         if (roundEnv.processingOver()) {
+            if (!this.generated && !this.mappingClasses.isEmpty()) {
+                generateMappings();
+            }
+
             return false;
         }
 
-        List<TypeElement> mappingClasses = new ArrayList<>();
-
+        boolean found = false;
         for (Element element : roundEnv.getElementsAnnotatedWith(Mapping.class)) {
-            if (element instanceof TypeElement) {
-                mappingClasses.add((TypeElement) element);
+            if (element instanceof TypeElement && this.mappingClasses.add(((TypeElement) element).getQualifiedName().toString())) {
+                found = true;
+
+                if (this.generated) {
+                    this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Mapping class was created after "
+                            + this.mapperClass + " was generated", element);
+                }
             }
         }
 
-        if (mappingClasses.isEmpty()) {
-            return true;
+        // Source files created in the last round are not compiled without a warning, so the mapper class is generated as soon
+        // as the mapping classes are known. Without another processor creating sources there is no round between this one and
+        // the last round.
+        if (found && !this.generated && this.mapperClass != null) {
+            generateMappings();
+            this.generated = true;
         }
 
-        try {
-            FileObject file = this.processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", "mappings.json");
+        return true;
+    }
 
-            Map<String, MappedClass> mappings;
-            try (Reader reader = file.openReader(false)) {
-                mappings = Mappings.read(reader);
-            } catch (IOException ignored) {
-                mappings = new HashMap<>();
+    private void generateMappings() {
+        List<TypeElement> mappingClasses = new ArrayList<>(this.mappingClasses.size());
+        for (String name : this.mappingClasses) {
+            TypeElement element = this.processingEnv.getElementUtils().getTypeElement(name);
+            if (element != null) {
+                mappingClasses.add(element);
             }
+        }
 
-            ClassMapper classMappings = createMapper(mappingClasses);
+        // Sort the classes so the output stays stable between (incremental) compilations
+        Map<String, MappedClass> mappings = new TreeMap<>();
 
-            // We need to remap the descriptors of the fields and methods, use ASM for convenience
-            Remapper unmapper = classMappings.createUnmapper();
+        ClassMapper classMappings = createMapper(mappingClasses);
 
-            for (TypeElement mappingClass : mappingClasses) {
-                String internalName = getInternalName(mappingClass);
+        // We need to remap the descriptors of the fields and methods, use ASM for convenience
+        Remapper unmapper = classMappings.createUnmapper();
 
-                Mapping annotation = mappingClass.getAnnotation(Mapping.class);
-                String mappedName = annotation.value();
-                if (mappedName.isEmpty()) {
-                    mappedName = internalName;
-                }
+        // Members without explicit mapping, they are looked up in the base jar after the explicit ones are known
+        List<DetectedMember> detected = new ArrayList<>();
+
+        for (TypeElement mappingClass : mappingClasses) {
+            String internalName = getInternalName(mappingClass);
+
+            Mapping annotation = mappingClass.getAnnotation(Mapping.class);
+            String mappedName = annotation.value();
+            if (mappedName.isEmpty()) {
+                mappedName = internalName;
+            }
+
+            MappedClass mapping = new MappedClass(mappedName);
 
-                MappedClass mapping = new MappedClass(mappedName);
+            Accessible accessible = mappingClass.getAnnotation(Accessible.class);
+            if (accessible != null) {
+                mapping.getAccess().put("", parseAccessible(accessible));
+            }
+
+            for (Element element : mappingClass.getEnclosedElements()) {
+                accessible = element.getAnnotation(Accessible.class);
+
+                Constructor constructor = element.getAnnotation(Constructor.class);
+                if (constructor != null) {
+                    if (accessible != null) {
+                        String constructorDesc = getDescriptor((ExecutableElement) element);
 
-                Accessible accessible = mappingClass.getAnnotation(Accessible.class);
-                if (accessible != null) {
-                    mapping.getAccess().put("", parseAccessible(accessible));
+                        mapping.getAccess().put("<init>" + constructorDesc, parseAccessible(accessible));
+                    }
+                    continue;
                 }
 
-                for (Element element : mappingClass.getEnclosedElements()) {
-                    accessible = element.getAnnotation(Accessible.class);
+                annotation = element.getAnnotation(Mapping.class);
+                if (annotation == null) {
+                    continue;
+                }
+
+                mappedName = annotation.value();
+
+                switch (element.getKind()) {
+                    case METHOD:
+                        ExecutableElement method = (ExecutableElement) element;
+                        String methodName = method.getSimpleName().toString();
+                        String methodDesc = getDescriptor(method);
+                        String obfMethodDesc = unmapper.mapMethodDesc(methodDesc);
+                        if (mappedName.isEmpty()) {
+                            detected.add(new DetectedMember(element, methodName, obfMethodDesc, false));
+                        } else {
+                            mapping.getMethods().put(mappedName + obfMethodDesc, methodName);
+                        }
 
-                    Constructor constructor = element.getAnnotation(Constructor.class);
-                    if (constructor != null) {
                         if (accessible != null) {
-                            String constructorDesc = getDescriptor((ExecutableElement) element);
+                            mapping.getAccess().put(methodName + methodDesc, parseAccessible(accessible));
+                        }
 
-                            mapping.getAccess().put("<init>" + constructorDesc, parseAccessible(accessible));
+                        break;
+                    case FIELD:
+                    case ENUM_CONSTANT:
+                        VariableElement field = (VariableElement) element;
+                        String fieldName = field.getSimpleName().toString();
+                        String obfFieldDesc = unmapper.mapDesc(getDescriptor(field));
+                        if (mappedName.isEmpty()) {
+                            detected.add(new DetectedMember(element, fieldName, obfFieldDesc, true));
+                        } else {
+                            mapping.getFields().put(mappedName + ':' + obfFieldDesc, fieldName);
                         }
-                        continue;
-                    }
 
-                    annotation = element.getAnnotation(Mapping.class);
-                    if (annotation == null) {
-                        continue;
-                    }
+                        if (accessible != null) {
+                            mapping.getAccess().put(fieldName, parseAccessible(accessible));
+                        }
 
-                    mappedName = annotation.value();
-                    checkArgument(!mappedName.isEmpty(), "Mapping detection is not supported yet");
-
-                    switch (element.getKind()) {
-                        case METHOD:
-                            ExecutableElement method = (ExecutableElement) element;
-                            String methodName = method.getSimpleName().toString();
-                            String methodDesc = getDescriptor(method);
-                            mapping.getMethods().put(mappedName + unmapper.mapMethodDesc(methodDesc), methodName);
-
-                            if (accessible != null) {
-                                mapping.getAccess().put(methodName + methodDesc, parseAccessible(accessible));
-                            }
-
-                            break;
-                        case FIELD:
-                        case ENUM_CONSTANT:
-                            VariableElement field = (VariableElement) element;
-                            String fieldName = field.getSimpleName().toString();
-                            mapping.getFields().put(mappedName + ':' + unmapper.mapDesc(getDescriptor(field)), fieldName);
-
-                            if (accessible != null) {
-                                mapping.getAccess().put(fieldName, parseAccessible(accessible));
-                            }
-
-                            break;
-                        default:
-                    }
+                        break;
+                    default:
                 }
+            }
 
-                mappings.put(internalName, mapping);
+            if (!detected.isEmpty()) {
+                detectMembers(mapping, detected);
+                detected.clear();
             }
 
-            // Generate JSON output
-            file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "mappings.json");
+            mappings.put(internalName, mapping);
+        }
+
+        // Generate JSON output, all mapping classes contribute to the single (aggregated) file
+        try {
+            FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "mappings.json",
+                    mappingClasses.toArray(new Element[mappingClasses.size()]));
             try (Writer writer = file.openWriter()) {
                 Mappings.write(writer, mappings);
             }
-
-            return true;
         } catch (IOException e) {
             this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ExceptionUtils.getStackTrace(e));
             throw new RuntimeException("Failed to create mappings.json", e);
         }
+
+        if (this.mapperClass != null) {
+            generateMapperClass(mappings, mappingClasses);
+        }
+    }
+
+    // Generates a class that creates the mapper from string constants, so the mappings don't need to be parsed from JSON at runtime
+    private void generateMapperClass(Map<String, MappedClass> mappings, List<TypeElement> mappingClasses) {
+        int pos = this.mapperClass.lastIndexOf('.');
+        String packageName = pos >= 0 ? this.mapperClass.substring(0, pos) : null;
+        String simpleName = this.mapperClass.substring(pos + 1);
+
+        try {
+            JavaFileObject file = this.processingEnv.getFiler().createSourceFile(this.mapperClass,
+                    mappingClasses.toArray(new Element[mappingClasses.size()]));
+            try (Writer writer = file.openWriter()) {
+                if (packageName != null) {
+                    writer.write("package " + packageName + ";\n\n");
+                }
+
+                writer.write("import net.minecrell.quartz.mappings.loader.CompiledMappings;\n");
+                writer.write("import net.minecrell.quartz.mappings.mapper.Mapper;\n\n");
+                writer.write("// Generated by " + getClass().getSimpleName() + " from the mapping classes\n");
+                writer.write("public final class " + simpleName + " {\n\n");
+                writer.write("    private " + simpleName + "() {}\n\n");
+                writer.write("    private static final String[] MAPPINGS = {\n");
+                for (String chunk : CompiledMappings.write(mappings)) {
+                    writer.write("            \"" + escape(chunk) + "\",\n");
+                }
+                writer.write("    };\n\n");
+                writer.write("    public static Mapper createMapper() {\n");
+                writer.write("        return CompiledMappings.createMapper(MAPPINGS);\n");
+                writer.write("    }\n\n");
+                writer.write("}\n");
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ExceptionUtils.getStackTrace(e));
+            throw new RuntimeException("Failed to create " + this.mapperClass, e);
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder builder = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '"':
+                case '\\':
+                    builder.append('\\').append(c);
+                    break;
+                default:
+                    // Unicode escapes are translated before the source is parsed, so they can't be used for line terminators
+                    if (c < 0x20 || c == 0x7F) {
+                        builder.append(String.format("\\%03o", (int) c));
+                    } else if (c > 0x7F) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private void detectMembers(MappedClass mapping, List<DetectedMember> members) {
+        MemberIndex index;
+        try {
+            index = getBaseIndex();
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ExceptionUtils.getStackTrace(e));
+            throw new RuntimeException("Failed to read base JAR", e);
+        }
+
+        // Names that are mapped explicitly can't belong to another member
+        // The member maps are created on first access, so check first to avoid adding empty maps to the output
+        Set<String> used = new HashSet<>();
+        if (mapping.hasMethods()) {
+            used.addAll(mapping.getMethods().keySet());
+        }
+        if (mapping.hasFields()) {
+            used.addAll(mapping.getFields().keySet());
+        }
+
+        for (DetectedMember member : members) {
+            List<String> candidates = new ArrayList<>();
+            for (String name : index.getMembers(mapping.getName(), member.desc)) {
+                if (!used.contains(member.getKey(name))) {
+                    candidates.add(name);
+                }
+            }
+
+            if (candidates.size() != 1) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, (candidates.isEmpty() ? "Unable to detect mapping for "
+                        : "Ambiguous mapping for ") + member.name + " in " + mapping.getName() + ", candidates: " + candidates
+                        + ". Please specify it explicitly.", member.element);
+                continue;
+            }
+
+            String key = member.getKey(candidates.get(0));
+            used.add(key);
+            if (member.field) {
+                mapping.getFields().put(key, member.name);
+            } else {
+                mapping.getMethods().put(key, member.name);
+            }
+        }
     }
 
     private static ClassMapper createMapper(List<TypeElement> mappingClasses) {
@@ -212,4 +388,24 @@ private static AccessTransform parseAccessible(Accessible accessible) {
         return new AccessTransform(accessible.access(), accessible.removeFinal());
     }
 
+    private static final class DetectedMember {
+
+        private final Element element;
+        private final String name;
+        private final String desc;
+        private final boolean field;
+
+        private DetectedMember(Element element, String name, String desc, boolean field) {
+            this.element = element;
+            this.name = name;
+            this.desc = desc;
+            this.field = field;
+        }
+
+        private String getKey(String mappedName) {
+            return this.field ? mappedName + ':' + this.desc : mappedName + this.desc;
+        }
+
+    }
+
 }
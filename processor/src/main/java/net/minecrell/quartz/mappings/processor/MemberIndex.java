@@ -0,0 +1,179 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.processor;
+
+import static java.util.Objects.hash;
+import static org.objectweb.asm.ClassReader.SKIP_CODE;
+import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+import static org.objectweb.asm.Opcodes.ACC_BRIDGE;
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.ASM5;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// The member names of all classes in a jar, grouped by their owner and (obfuscated) descriptor
+public final class MemberIndex {
+
+    // The processor may be run many times in the same JVM (e.g. in the Gradle daemon), so the index is kept as long as the jar doesn't
+    // change and there is enough memory
+    private static final Cache<Key, MemberIndex> cache = CacheBuilder.newBuilder().softValues().build();
+
+    private final ImmutableListMultimap<String, String> members;
+
+    private MemberIndex(ImmutableListMultimap<String, String> members) {
+        this.members = members;
+    }
+
+    public static MemberIndex get(Path jar) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        Key key = new Key(jar.toAbsolutePath().normalize(), attributes.lastModifiedTime().toMillis(), attributes.size());
+
+        try {
+            return cache.get(key, () -> read(key.path));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Failed to index " + jar, e.getCause());
+        }
+    }
+
+    public static MemberIndex read(Path jar) throws IOException {
+        ImmutableListMultimap.Builder<String, String> members = ImmutableListMultimap.builder();
+
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                    continue;
+                }
+
+                ClassReader reader;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    reader = new ClassReader(in);
+                }
+
+                String owner = reader.getClassName();
+                reader.accept(new ClassVisitor(ASM5) {
+
+                    @Override
+                    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                        if ((access & ACC_SYNTHETIC) == 0) {
+                            members.put(getKey(owner, desc), name);
+                        }
+
+                        return null;
+                    }
+
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                        // Constructors and static initializers are never mapped
+                        if ((access & (ACC_SYNTHETIC | ACC_BRIDGE)) == 0 && name.charAt(0) != '<') {
+                            members.put(getKey(owner, desc), name);
+                        }
+
+                        return null;
+                    }
+
+                }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+            }
+        }
+
+        return new MemberIndex(members.build());
+    }
+
+    private static String getKey(String owner, String desc) {
+        // Method descriptors start with '(', so they never conflict with field descriptors
+        return owner + ':' + desc;
+    }
+
+    // Returns the names of the methods or fields with the descriptor declared in the specified class
+    public ImmutableList<String> getMembers(String owner, String desc) {
+        return this.members.get(getKey(owner, desc));
+    }
+
+    public int size() {
+        return this.members.size();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("members", this.members.size())
+                .toString();
+    }
+
+    private static final class Key {
+
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+
+        private Key(Path path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key that = (Key) o;
+            return this.lastModified == that.lastModified && this.size == that.size && this.path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(this.path, this.lastModified, this.size);
+        }
+
+    }
+
+}
@@ -26,6 +26,7 @@
 import static java.util.Objects.requireNonNull;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -81,7 +82,8 @@ public boolean hasAccess() {
 
     public Map<String, AccessTransform> getAccess() {
         if (this.access == null) {
-            this.access = new HashMap<>();
+            // Wildcard targets are matched in the order they were added
+            this.access = new LinkedHashMap<>();
         }
 
         return this.access;
@@ -0,0 +1,169 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import net.minecrell.quartz.mappings.AccessModifier;
+import net.minecrell.quartz.mappings.AccessTransform;
+import net.minecrell.quartz.mappings.MappedClass;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.util.Map;
+
+// Mappings stored as string constants in a generated class. The data is split into chunks because a string constant
+// can't be longer than 65535 bytes in a class file.
+//
+// Each line describes a class or a member of the previous class:
+//   C <obfuscated name> <deobfuscated name>
+//   M <obfuscated name and descriptor> <deobfuscated name>
+//   F <obfuscated name:descriptor> <deobfuscated name>
+//   A <target> <access modifier ordinal> <remove final (0 or 1)>
+public final class CompiledMappings {
+
+    private CompiledMappings() {}
+
+    // Modified UTF-8 may use up to 3 bytes for each character
+    private static final int MAX_CHUNK_LENGTH = 65535 / 3;
+
+    private static final char SEPARATOR = '\t';
+    private static final char LINE_SEPARATOR = '\n';
+
+    private static final AccessModifier[] modifiers = AccessModifier.values();
+
+    public static ImmutableList<String> write(Map<String, MappedClass> mappings) {
+        ImmutableList.Builder<String> chunks = ImmutableList.builder();
+        StringBuilder chunk = new StringBuilder(MAX_CHUNK_LENGTH);
+        StringBuilder line = new StringBuilder();
+
+        for (Map.Entry<String, MappedClass> entry : mappings.entrySet()) {
+            MappedClass mapping = entry.getValue();
+            appendLine(chunks, chunk, line.append('C').append(SEPARATOR).append(mapping.getName()).append(SEPARATOR).append(entry.getKey()));
+
+            if (mapping.hasMethods()) {
+                for (Map.Entry<String, String> method : mapping.getMethods().entrySet()) {
+                    appendLine(chunks, chunk, line.append('M').append(SEPARATOR).append(method.getKey()).append(SEPARATOR).append(method.getValue()));
+                }
+            }
+
+            if (mapping.hasFields()) {
+                for (Map.Entry<String, String> field : mapping.getFields().entrySet()) {
+                    appendLine(chunks, chunk, line.append('F').append(SEPARATOR).append(field.getKey()).append(SEPARATOR).append(field.getValue()));
+                }
+            }
+
+            if (mapping.hasAccess()) {
+                for (Map.Entry<String, AccessTransform> access : mapping.getAccess().entrySet()) {
+                    appendLine(chunks, chunk, line.append('A').append(SEPARATOR).append(access.getKey())
+                            .append(SEPARATOR).append(access.getValue().getAccess().ordinal())
+                            .append(SEPARATOR).append(access.getValue().removeFinal() ? '1' : '0'));
+                }
+            }
+        }
+
+        if (chunk.length() > 0) {
+            chunks.add(chunk.toString());
+        }
+
+        return chunks.build();
+    }
+
+    private static void appendLine(ImmutableList.Builder<String> chunks, StringBuilder chunk, StringBuilder line) {
+        line.append(LINE_SEPARATOR);
+        checkArgument(line.length() <= MAX_CHUNK_LENGTH, "Mapping too long: %s", line);
+
+        // Lines are never split between chunks
+        if (chunk.length() + line.length() > MAX_CHUNK_LENGTH) {
+            chunks.add(chunk.toString());
+            chunk.setLength(0);
+        }
+
+        chunk.append(line);
+        line.setLength(0);
+    }
+
+    public static Mapper createMapper(String... chunks) {
+        ImmutableBiMap.Builder<String, String> classes = ImmutableBiMap.builder();
+        ImmutableTable.Builder<String, String, String> methods = ImmutableTable.builder();
+        ImmutableTable.Builder<String, String, String> fields = ImmutableTable.builder();
+        ImmutableMap.Builder<String, ImmutableMap<String, AccessTransform>> accessTransforms = ImmutableMap.builder();
+
+        String mappedName = null;
+        String className = null;
+        // The access transforms of the current class, in the order they were written
+        ImmutableMap.Builder<String, AccessTransform> access = null;
+
+        for (String chunk : chunks) {
+            int pos = 0;
+            while (pos < chunk.length()) {
+                int end = chunk.indexOf(LINE_SEPARATOR, pos);
+                int first = chunk.indexOf(SEPARATOR, pos + 2);
+                checkArgument(end > 0 && first > 0 && first < end, "Invalid compiled mappings");
+
+                String key = chunk.substring(pos + 2, first);
+                switch (chunk.charAt(pos)) {
+                    case 'C':
+                        if (access != null) {
+                            accessTransforms.put(className, access.build());
+                            access = null;
+                        }
+
+                        mappedName = key;
+                        String internalName = chunk.substring(first + 1, end);
+                        className = internalName.replace('/', '.');
+                        classes.put(mappedName, internalName);
+                        break;
+                    case 'M':
+                        methods.put(mappedName, key, chunk.substring(first + 1, end));
+                        break;
+                    case 'F':
+                        fields.put(mappedName, key, chunk.substring(first + 1, end));
+                        break;
+                    case 'A':
+                        if (access == null) {
+                            access = ImmutableMap.builder();
+                        }
+
+                        access.put(key, new AccessTransform(modifiers[chunk.charAt(first + 1) - '0'],
+                                chunk.charAt(end - 1) == '1'));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid compiled mappings");
+                }
+
+                pos = end + 1;
+            }
+        }
+
+        if (access != null) {
+            accessTransforms.put(className, access.build());
+        }
+
+        return new Mapper(classes.build(), methods.build(), fields.build(), accessTransforms.build());
+    }
+
+}
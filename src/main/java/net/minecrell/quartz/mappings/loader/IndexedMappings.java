@@ -0,0 +1,149 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import net.minecrell.quartz.mappings.AccessTransform;
+import net.minecrell.quartz.mappings.MappedClass;
+import net.minecrell.quartz.mappings.mapper.IndexedMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+public final class IndexedMappings {
+
+    private IndexedMappings() {}
+
+    public static IndexedMapper open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel was closed
+            return new IndexedMapper(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(Path path, Map<String, MappedClass> mappings) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(out, mappings);
+        }
+    }
+
+    public static void write(OutputStream out, Map<String, MappedClass> mappings) throws IOException {
+        List<Map.Entry<String, MappedClass>> classes = new ArrayList<>(mappings.entrySet());
+        int count = classes.size();
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+
+        int base = IndexedMapper.HEADER_SIZE + count * 8;
+        int[] offsets = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            offsets[i] = base + recordsOut.size();
+
+            Map.Entry<String, MappedClass> entry = classes.get(i);
+            MappedClass mapping = entry.getValue();
+
+            writeString(recordsOut, mapping.getName());
+            writeString(recordsOut, entry.getKey());
+
+            writeNames(recordsOut, mapping.hasMethods() ? mapping.getMethods() : Collections.<String, String>emptyMap());
+            writeNames(recordsOut, mapping.hasFields() ? mapping.getFields() : Collections.<String, String>emptyMap());
+
+            if (mapping.hasAccess()) {
+                recordsOut.writeInt(mapping.getAccess().size());
+                for (Map.Entry<String, AccessTransform> access : mapping.getAccess().entrySet()) {
+                    writeString(recordsOut, access.getKey());
+                    recordsOut.writeByte(access.getValue().getAccess().ordinal());
+                    recordsOut.writeByte(access.getValue().removeFinal() ? 1 : 0);
+                }
+            } else {
+                recordsOut.writeInt(0);
+            }
+        }
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(IndexedMapper.MAGIC);
+        header.writeInt(IndexedMapper.VERSION);
+        header.writeInt(count);
+
+        // Index sorted by the obfuscated name
+        for (int i : sortIndex(classes, (a, b) -> a.getValue().getName().compareTo(b.getValue().getName()))) {
+            header.writeInt(offsets[i]);
+        }
+
+        // Index sorted by the deobfuscated name
+        for (int i : sortIndex(classes, (a, b) -> a.getKey().compareTo(b.getKey()))) {
+            header.writeInt(offsets[i]);
+        }
+
+        records.writeTo(header);
+        header.flush();
+    }
+
+    private static int[] sortIndex(List<Map.Entry<String, MappedClass>> classes, Comparator<Map.Entry<String, MappedClass>> comparator) {
+        Integer[] index = new Integer[classes.size()];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+
+        Arrays.sort(index, (a, b) -> comparator.compare(classes.get(a), classes.get(b)));
+
+        int[] result = new int[index.length];
+        for (int i = 0; i < index.length; i++) {
+            result[i] = index[i];
+        }
+
+        return result;
+    }
+
+    private static void writeNames(DataOutputStream out, Map<String, String> names) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        checkArgument(bytes.length <= 0xFFFF, "String too long for the mappings index: %s", s);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+}
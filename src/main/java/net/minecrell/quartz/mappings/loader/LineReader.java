@@ -0,0 +1,88 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// Reads mapping files line by line and splits the lines without regular expressions
+final class LineReader {
+
+    private final BufferedReader reader;
+    private int lineNumber;
+
+    // Reused for all lines, callers must copy the tokens they want to keep
+    private String[] tokens = new String[8];
+
+    LineReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    String readLine() throws IOException {
+        String line = this.reader.readLine();
+        if (line != null) {
+            this.lineNumber++;
+        }
+
+        return line;
+    }
+
+    int getLineNumber() {
+        return this.lineNumber;
+    }
+
+    // Returns the number of tokens, the tokens are available using get(int) until the next call
+    int split(String line, char separator, int start) {
+        int count = 0;
+        int pos = start;
+        while (true) {
+            int end = line.indexOf(separator, pos);
+            if (count == this.tokens.length) {
+                this.tokens = Arrays.copyOf(this.tokens, count * 2);
+            }
+
+            if (end < 0) {
+                this.tokens[count++] = line.substring(pos);
+                return count;
+            }
+
+            this.tokens[count++] = line.substring(pos, end);
+            pos = end + 1;
+        }
+    }
+
+    String get(int index) {
+        return this.tokens[index];
+    }
+
+    void set(int index, String token) {
+        this.tokens[index] = token;
+    }
+
+    IOException error(String message) {
+        return new IOException(message + " at line " + this.lineNumber);
+    }
+
+}
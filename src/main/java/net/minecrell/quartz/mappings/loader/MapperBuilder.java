@@ -0,0 +1,135 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableTable;
+import net.minecrell.quartz.mappings.AccessTransform;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Builds a mapper from single class and member mappings, used by the readers for other mapping formats.
+//
+// The owners and descriptors of the members are expected with the obfuscated class names by default. Some formats describe them
+// using other class names (e.g. the deobfuscated ones for ProGuard), these are converted to the obfuscated names once the mapper is
+// built if their obfuscated names were added with addDescriptorClass.
+//
+// Fields without descriptor are stored as "name:" and are matched by their name only.
+public final class MapperBuilder {
+
+    private final Map<String, String> classes = new HashMap<>();
+    private final Map<String, String> descriptorClasses = new HashMap<>();
+
+    private final Map<String, Map<String, String>> methods = new HashMap<>();
+    private final Map<String, Map<String, String>> fields = new HashMap<>();
+
+    public MapperBuilder addClass(String name, String mappedName) {
+        if (!name.equals(mappedName)) {
+            this.classes.put(name, mappedName);
+        }
+
+        return this;
+    }
+
+    public MapperBuilder addDescriptorClass(String name, String obfuscatedName) {
+        if (!name.equals(obfuscatedName)) {
+            this.descriptorClasses.put(name, obfuscatedName);
+        }
+
+        return this;
+    }
+
+    // The first mapping for a member wins
+    public MapperBuilder addMethod(String owner, String name, String desc, String mappedName) {
+        if (!name.equals(mappedName)) {
+            getRow(this.methods, owner).putIfAbsent(name + requireNonNull(desc, "desc"), mappedName);
+        }
+
+        return this;
+    }
+
+    public MapperBuilder addField(String owner, String name, String desc, String mappedName) {
+        if (!name.equals(mappedName)) {
+            getRow(this.fields, owner).putIfAbsent(desc != null ? name + ':' + desc : name + ':', mappedName);
+        }
+
+        return this;
+    }
+
+    private static Map<String, String> getRow(Map<String, Map<String, String>> table, String owner) {
+        Map<String, String> row = table.get(owner);
+        if (row == null) {
+            row = new HashMap<>();
+            table.put(owner, row);
+        }
+
+        return row;
+    }
+
+    private String getOwner(String name) {
+        String result = this.descriptorClasses.get(name);
+        return result != null ? result : name;
+    }
+
+    public Mapper build() {
+        Remapper remapper = this.descriptorClasses.isEmpty() ? null : new SimpleRemapper(this.descriptorClasses);
+
+        ImmutableTable.Builder<String, String, String> methods = ImmutableTable.builder();
+        for (Map.Entry<String, Map<String, String>> row : this.methods.entrySet()) {
+            String owner = getOwner(row.getKey());
+            for (Map.Entry<String, String> entry : row.getValue().entrySet()) {
+                String key = entry.getKey();
+                if (remapper != null) {
+                    int pos = key.indexOf('(');
+                    key = key.substring(0, pos) + remapper.mapMethodDesc(key.substring(pos));
+                }
+
+                methods.put(owner, key, entry.getValue());
+            }
+        }
+
+        ImmutableTable.Builder<String, String, String> fields = ImmutableTable.builder();
+        for (Map.Entry<String, Map<String, String>> row : this.fields.entrySet()) {
+            String owner = getOwner(row.getKey());
+            for (Map.Entry<String, String> entry : row.getValue().entrySet()) {
+                String key = entry.getKey();
+                if (remapper != null && !key.endsWith(":")) {
+                    int pos = key.indexOf(':') + 1;
+                    key = key.substring(0, pos) + remapper.mapDesc(key.substring(pos));
+                }
+
+                fields.put(owner, key, entry.getValue());
+            }
+        }
+
+        return new Mapper(ImmutableBiMap.copyOf(this.classes), methods.build(), fields.build(),
+                ImmutableTable.<String, String, AccessTransform>of());
+    }
+
+}
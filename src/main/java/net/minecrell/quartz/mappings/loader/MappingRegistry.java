@@ -0,0 +1,192 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import net.minecrell.quartz.mappings.MappedClass;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MappingRegistry {
+
+    private final Callable<Map<String, MappedClass>> source;
+    private final Executor executor;
+
+    private final AtomicReference<Snapshot> snapshot;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object reloadLock = new Object();
+
+    public MappingRegistry(Callable<Map<String, MappedClass>> source, Executor executor) throws Exception {
+        this.source = requireNonNull(source, "source");
+        this.executor = requireNonNull(executor, "executor");
+
+        ImmutableMap<String, MappedClass> mappings = ImmutableMap.copyOf(source.call());
+        this.snapshot = new AtomicReference<>(new Snapshot(0, Mappings.createMapper(mappings), mappings, getObfuscatedNames(mappings)));
+    }
+
+    public Snapshot getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    public Mapper getMapper() {
+        return this.snapshot.get().getMapper();
+    }
+
+    public void addListener(Listener listener) {
+        this.listeners.add(requireNonNull(listener, "listener"));
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    public CompletableFuture<Snapshot> reload() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return reloadNow();
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            }
+        }, this.executor);
+    }
+
+    public Snapshot reloadNow() throws Exception {
+        // Only one reload at a time, readers are never blocked and keep using the current snapshot until the new one is published
+        synchronized (this.reloadLock) {
+            Snapshot previous = this.snapshot.get();
+            Map<String, MappedClass> loaded = this.source.call();
+
+            Map<String, MappedClass> mappings = new LinkedHashMap<>(loaded.size());
+            ImmutableSet.Builder<String> changed = ImmutableSet.builder();
+
+            for (Map.Entry<String, MappedClass> entry : loaded.entrySet()) {
+                MappedClass mapping = entry.getValue();
+                MappedClass old = previous.mappings.get(entry.getKey());
+
+                if (mapping.equals(old)) {
+                    // Keep the old instance so the new one can be garbage collected
+                    mapping = old;
+                } else {
+                    changed.add(mapping.getName());
+                    if (old != null) {
+                        changed.add(old.getName());
+                    }
+                }
+
+                mappings.put(entry.getKey(), mapping);
+            }
+
+            for (Map.Entry<String, MappedClass> entry : previous.mappings.entrySet()) {
+                if (!mappings.containsKey(entry.getKey())) {
+                    changed.add(entry.getValue().getName());
+                }
+            }
+
+            ImmutableSet<String> changedClasses = changed.build();
+            if (changedClasses.isEmpty()) {
+                return previous;
+            }
+
+            ImmutableMap<String, MappedClass> result = ImmutableMap.copyOf(mappings);
+            Snapshot snapshot = new Snapshot(previous.version + 1, Mappings.createMapper(result), result, changedClasses);
+            this.snapshot.set(snapshot);
+
+            for (Listener listener : this.listeners) {
+                listener.onReload(previous, snapshot);
+            }
+
+            return snapshot;
+        }
+    }
+
+    private static ImmutableSet<String> getObfuscatedNames(Map<String, MappedClass> mappings) {
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        for (MappedClass mapping : mappings.values()) {
+            result.add(mapping.getName());
+        }
+        return result.build();
+    }
+
+    public interface Listener {
+
+        void onReload(Snapshot previous, Snapshot current);
+
+    }
+
+    public static final class Snapshot {
+
+        private final long version;
+        private final Mapper mapper;
+        private final ImmutableMap<String, MappedClass> mappings;
+        private final ImmutableSet<String> changedClasses;
+
+        private Snapshot(long version, Mapper mapper, ImmutableMap<String, MappedClass> mappings, ImmutableSet<String> changedClasses) {
+            this.version = version;
+            this.mapper = mapper;
+            this.mappings = mappings;
+            this.changedClasses = changedClasses;
+        }
+
+        public long getVersion() {
+            return this.version;
+        }
+
+        public Mapper getMapper() {
+            return this.mapper;
+        }
+
+        public ImmutableMap<String, MappedClass> getMappings() {
+            return this.mappings;
+        }
+
+        // Obfuscated names of all classes that were added, removed or changed compared to the previous version
+        public ImmutableSet<String> getChangedClasses() {
+            return this.changedClasses;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("version", this.version)
+                    .add("classes", this.mappings.size())
+                    .add("changed", this.changedClasses.size())
+                    .toString();
+        }
+
+    }
+
+}
@@ -23,6 +23,7 @@
 package net.minecrell.quartz.mappings.loader;
 
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableTable;
 import com.google.gson.Gson;
@@ -41,7 +42,9 @@
 import java.lang.reflect.Type;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 public final class Mappings {
 
@@ -83,7 +86,8 @@ public static Mapper createMapper(Map<String, MappedClass> mappings) {
         ImmutableTable.Builder<String, String, String> methods = ImmutableTable.builder();
         ImmutableTable.Builder<String, String, String> fields = ImmutableTable.builder();
 
-        ImmutableTable.Builder<String, String, AccessTransform> accessTransforms = ImmutableTable.builder();
+        // The order of the access transforms is kept, the wildcards are matched in declaration order
+        ImmutableMap.Builder<String, ImmutableMap<String, AccessTransform>> accessTransforms = ImmutableMap.builder();
 
         ImmutableMultimap.Builder<String, MethodNode> constructors = ImmutableMultimap.builder();
 
@@ -104,13 +108,33 @@ public static Mapper createMapper(Map<String, MappedClass> mappings) {
             }
 
             if (mapping.hasAccess()) {
-                fillTable(accessTransforms, className, mapping.getAccess());
+                accessTransforms.put(className, ImmutableMap.copyOf(mapping.getAccess()));
             }
         }
 
         return new Mapper(classes.build(), methods.build(), fields.build(), accessTransforms.build());
     }
 
+    public static Map<String, MappedClass> createMappings(Mapper mapper) {
+        Map<String, MappedClass> result = new TreeMap<>();
+
+        for (Map.Entry<String, String> entry : mapper.getClasses().entrySet()) {
+            String mappedName = entry.getKey();
+            String internalName = entry.getValue();
+
+            Map<String, String> methods = mapper.getMethods(mappedName);
+            Map<String, String> fields = mapper.getFields(mappedName);
+            Map<String, AccessTransform> access = mapper.getAccessTransforms(internalName.replace('/', '.'));
+
+            result.put(internalName, new MappedClass(mappedName,
+                    methods.isEmpty() ? null : new LinkedHashMap<>(methods),
+                    fields.isEmpty() ? null : new LinkedHashMap<>(fields),
+                    access.isEmpty() ? null : new LinkedHashMap<>(access)));
+        }
+
+        return result;
+    }
+
     private static <R, C, V> void fillTable(ImmutableTable.Builder<R, C, V> builder, R row, Map<C, V> values) {
         for (Map.Entry<C, V> entry : values.entrySet()) {
             builder.put(row, entry.getKey(), entry.getValue());
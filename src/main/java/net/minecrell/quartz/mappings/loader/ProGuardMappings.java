@@ -0,0 +1,221 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Reads ProGuard mapping files (deobfuscated -> obfuscated). The members are described with the deobfuscated Java types,
+// their descriptors are converted to the obfuscated names once all classes are known.
+public final class ProGuardMappings {
+
+    private ProGuardMappings() {}
+
+    public static Mapper read(Reader reader) throws IOException {
+        MapperBuilder builder = new MapperBuilder();
+        read(reader, builder);
+        return builder.build();
+    }
+
+    public static void read(Reader reader, MapperBuilder builder) throws IOException {
+        LineReader lines = new LineReader(reader);
+        StringBuilder desc = new StringBuilder();
+
+        String owner = null;
+        // The last method, it is only added once the next line shows that it wasn't inlined into another method
+        PendingMethod pending = null;
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int start = 0;
+            while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+                start++;
+            }
+
+            // R8 also writes indented comments with metadata for the members
+            if (start == line.length() || line.charAt(start) == '#') {
+                continue;
+            }
+
+            int arrow = line.indexOf(" -> ");
+            if (arrow < 0) {
+                throw lines.error("Invalid ProGuard mapping");
+            }
+
+            String obfuscated = line.substring(arrow + 4).trim();
+            int paren = line.indexOf('(', start);
+            boolean method = start > 0 && paren >= 0 && paren < arrow;
+
+            // [1:5:]void name(int,java.lang.String)[:10[:14]] -> a
+            int rangeStart = start;
+            while (method && Character.isDigit(line.charAt(start))) {
+                start = line.indexOf(':', start) + 1;
+            }
+
+            // Inlined methods are written before the method they were inlined into, with the same obfuscated line range
+            // and name. Only the last method of the group is the real one.
+            if (pending != null) {
+                if (!method || !pending.isInlinedInto(line.substring(rangeStart, start), obfuscated)) {
+                    builder.addMethod(owner, pending.obfuscated, pending.desc, pending.name);
+                }
+
+                pending = null;
+            }
+
+            if (start == 0) {
+                // com.example.Class -> a:
+                if (!line.endsWith(":")) {
+                    throw lines.error("Invalid ProGuard class mapping");
+                }
+
+                owner = line.substring(0, arrow).replace('.', '/');
+                String obfuscatedOwner = line.substring(arrow + 4, line.length() - 1).replace('.', '/');
+                builder.addClass(obfuscatedOwner, owner);
+                builder.addDescriptorClass(owner, obfuscatedOwner);
+                continue;
+            }
+
+            if (owner == null) {
+                throw lines.error("Member mapping without class");
+            }
+
+            if (method) {
+                int end = line.indexOf(')', paren);
+                if (end < 0 || end > arrow) {
+                    throw lines.error("Invalid ProGuard method mapping");
+                }
+
+                int space = line.indexOf(' ', start);
+                String name = line.substring(space + 1, paren);
+                if (name.indexOf('.') >= 0) {
+                    // Methods inlined from other classes, they are only relevant for stack traces
+                    continue;
+                }
+
+                desc.setLength(0);
+                desc.append('(');
+                int pos = paren + 1;
+                while (pos < end) {
+                    int next = line.indexOf(',', pos);
+                    if (next < 0 || next > end) {
+                        next = end;
+                    }
+
+                    appendDescriptor(desc, line, pos, next);
+                    pos = next + 1;
+                }
+
+                desc.append(')');
+                appendDescriptor(desc, line, start, space);
+
+                // Only methods with the original line numbers may have been inlined
+                pending = new PendingMethod(name, desc.toString(), obfuscated, line.substring(rangeStart, start), line.charAt(end + 1) == ':');
+            } else {
+                // java.lang.String name -> a
+                int space = line.indexOf(' ', start);
+                if (space < 0 || space > arrow) {
+                    throw lines.error("Invalid ProGuard field mapping");
+                }
+
+                desc.setLength(0);
+                appendDescriptor(desc, line, start, space);
+                builder.addField(owner, obfuscated, desc.toString(), line.substring(space + 1, arrow));
+            }
+        }
+
+        if (pending != null) {
+            builder.addMethod(owner, pending.obfuscated, pending.desc, pending.name);
+        }
+    }
+
+    private static void appendDescriptor(StringBuilder builder, String line, int start, int end) {
+        while (end > start + 1 && line.charAt(end - 1) == ']') {
+            builder.append('[');
+            end -= 2;
+        }
+
+        switch (line.substring(start, end)) {
+            case "boolean":
+                builder.append('Z');
+                break;
+            case "byte":
+                builder.append('B');
+                break;
+            case "short":
+                builder.append('S');
+                break;
+            case "char":
+                builder.append('C');
+                break;
+            case "int":
+                builder.append('I');
+                break;
+            case "long":
+                builder.append('J');
+                break;
+            case "float":
+                builder.append('F');
+                break;
+            case "double":
+                builder.append('D');
+                break;
+            case "void":
+                builder.append('V');
+                break;
+            default:
+                builder.append('L');
+                for (int i = start; i < end; i++) {
+                    char c = line.charAt(i);
+                    builder.append(c == '.' ? '/' : c);
+                }
+                builder.append(';');
+        }
+    }
+
+    private static final class PendingMethod {
+
+        private final String name;
+        private final String desc;
+        private final String obfuscated;
+
+        // The obfuscated line range, e.g. "1:5:", empty if there is none
+        private final String range;
+        private final boolean originalLines;
+
+        private PendingMethod(String name, String desc, String obfuscated, String range, boolean originalLines) {
+            this.name = name;
+            this.desc = desc;
+            this.obfuscated = obfuscated;
+            this.range = range;
+            this.originalLines = originalLines;
+        }
+
+        private boolean isInlinedInto(String range, String obfuscated) {
+            return this.originalLines && !this.range.isEmpty() && this.range.equals(range) && this.obfuscated.equals(obfuscated);
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Reads SRG and CSRG mapping files (obfuscated -> deobfuscated), the format is detected for each line. Fields don't have
+// a descriptor in both formats (except in the XSRG variant), so they are matched by name only.
+public final class SrgMappings {
+
+    private SrgMappings() {}
+
+    public static Mapper read(Reader reader) throws IOException {
+        MapperBuilder builder = new MapperBuilder();
+        read(reader, builder);
+        return builder.build();
+    }
+
+    public static void read(Reader reader, MapperBuilder builder) throws IOException {
+        LineReader lines = new LineReader(reader);
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+
+            if (line.length() > 4 && line.charAt(2) == ':' && line.charAt(3) == ' ') {
+                readSrg(lines, line, builder);
+            } else {
+                readCsrg(lines, line, builder);
+            }
+        }
+    }
+
+    private static void readSrg(LineReader lines, String line, MapperBuilder builder) throws IOException {
+        int count = lines.split(line, ' ', 4);
+        switch (line.substring(0, 2)) {
+            case "PK":
+                break;
+            case "CL":
+                if (count != 2) {
+                    throw lines.error("Invalid SRG class mapping");
+                }
+
+                builder.addClass(lines.get(0), lines.get(1));
+                break;
+            case "FD":
+                // FD: a/b net/example/Class/field
+                // XSRG: FD: a/b I net/example/Class/field I
+                if (count == 2) {
+                    addField(lines, builder, lines.get(0), null, lines.get(1));
+                } else if (count == 4) {
+                    addField(lines, builder, lines.get(0), lines.get(1), lines.get(2));
+                } else {
+                    throw lines.error("Invalid SRG field mapping");
+                }
+
+                break;
+            case "MD":
+                // MD: a/b (I)V net/example/Class/method (I)V
+                if (count != 4) {
+                    throw lines.error("Invalid SRG method mapping");
+                }
+
+                String member = lines.get(0);
+                String desc = lines.get(1);
+                String mapped = lines.get(2);
+
+                int pos = member.lastIndexOf('/');
+                if (pos < 0) {
+                    throw lines.error("Invalid SRG method mapping");
+                }
+
+                builder.addMethod(member.substring(0, pos), member.substring(pos + 1), desc, mapped.substring(mapped.lastIndexOf('/') + 1));
+                break;
+            default:
+                throw lines.error("Unknown SRG mapping type");
+        }
+    }
+
+    private static void addField(LineReader lines, MapperBuilder builder, String member, String desc, String mapped) throws IOException {
+        int pos = member.lastIndexOf('/');
+        if (pos < 0) {
+            throw lines.error("Invalid SRG field mapping");
+        }
+
+        builder.addField(member.substring(0, pos), member.substring(pos + 1), desc, mapped.substring(mapped.lastIndexOf('/') + 1));
+    }
+
+    private static void readCsrg(LineReader lines, String line, MapperBuilder builder) throws IOException {
+        switch (lines.split(line, ' ', 0)) {
+            case 2:
+                // a net/example/Class
+                builder.addClass(lines.get(0), lines.get(1));
+                break;
+            case 3:
+                // a b field
+                builder.addField(lines.get(0), lines.get(1), null, lines.get(2));
+                break;
+            case 4:
+                // a b (I)V method
+                builder.addMethod(lines.get(0), lines.get(1), lines.get(2), lines.get(3));
+                break;
+            default:
+                throw lines.error("Invalid CSRG mapping");
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.loader;
+
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Reads Tiny (v1 and v2) mapping files. The mapper maps from the source to the target namespace; the descriptors in the file
+// always use the first namespace, so they are converted to the source namespace if necessary.
+public final class TinyMappings {
+
+    private TinyMappings() {}
+
+    public static Mapper read(Reader reader, String from, String to) throws IOException {
+        MapperBuilder builder = new MapperBuilder();
+        read(reader, from, to, builder);
+        return builder.build();
+    }
+
+    public static void read(Reader reader, String from, String to, MapperBuilder builder) throws IOException {
+        LineReader lines = new LineReader(reader);
+
+        String header = lines.readLine();
+        if (header == null) {
+            throw new IOException("Empty Tiny mappings");
+        }
+
+        int count = lines.split(header, '\t', 0);
+        if (lines.get(0).equals("v1")) {
+            readV1(lines, getNamespace(lines, count, 1, from), getNamespace(lines, count, 1, to), builder);
+        } else if (lines.get(0).equals("tiny") && count > 3 && lines.get(1).equals("2")) {
+            readV2(lines, getNamespace(lines, count, 3, from), getNamespace(lines, count, 3, to), builder);
+        } else {
+            throw lines.error("Unsupported Tiny mappings version");
+        }
+    }
+
+    // Returns the index of the namespace in the names of a line
+    private static int getNamespace(LineReader lines, int count, int start, String namespace) throws IOException {
+        for (int i = start; i < count; i++) {
+            if (lines.get(i).equals(namespace)) {
+                return i - start;
+            }
+        }
+
+        throw lines.error("Unknown namespace " + namespace);
+    }
+
+    private static String getName(LineReader lines, int start, int count, int namespace) {
+        // Missing names are the same as in the first namespace
+        String name = start + namespace < count ? lines.get(start + namespace) : "";
+        return name.isEmpty() ? lines.get(start) : name;
+    }
+
+    private static void readV1(LineReader lines, int from, int to, MapperBuilder builder) throws IOException {
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+
+            int count = lines.split(line, '\t', 0);
+            switch (lines.get(0)) {
+                case "CLASS":
+                    // CLASS  official  intermediary  named
+                    addClass(builder, lines.get(1), getName(lines, 1, count, from), getName(lines, 1, count, to));
+                    break;
+                case "METHOD":
+                    // METHOD  owner  desc  official  intermediary  named
+                    if (count < 4) {
+                        throw lines.error("Invalid Tiny method mapping");
+                    }
+
+                    builder.addMethod(lines.get(1), getName(lines, 3, count, from), lines.get(2), getName(lines, 3, count, to));
+                    break;
+                case "FIELD":
+                    if (count < 4) {
+                        throw lines.error("Invalid Tiny field mapping");
+                    }
+
+                    builder.addField(lines.get(1), getName(lines, 3, count, from), lines.get(2), getName(lines, 3, count, to));
+                    break;
+                default:
+            }
+        }
+    }
+
+    private static void readV2(LineReader lines, int from, int to, MapperBuilder builder) throws IOException {
+        boolean escaped = false;
+        String owner = null;
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            int depth = 0;
+            while (depth < line.length() && line.charAt(depth) == '\t') {
+                depth++;
+            }
+
+            if (depth > 1) {
+                // Parameters, local variables and comments of members
+                continue;
+            }
+
+            int count = lines.split(line, '\t', depth);
+            if (escaped) {
+                for (int i = 1; i < count; i++) {
+                    lines.set(i, unescape(lines.get(i)));
+                }
+            }
+
+            String type = lines.get(0);
+            if (depth == 0) {
+                if (type.equals("c")) {
+                    // c  official  intermediary  named
+                    if (count < 2) {
+                        throw lines.error("Invalid Tiny class mapping");
+                    }
+
+                    owner = lines.get(1);
+                    addClass(builder, owner, getName(lines, 1, count, from), getName(lines, 1, count, to));
+                }
+            } else if (owner == null) {
+                // Properties in the header
+                if (type.equals("escaped-names")) {
+                    escaped = true;
+                }
+            } else if (type.equals("m") || type.equals("f")) {
+                // m  desc  official  intermediary  named
+                if (count < 3) {
+                    throw lines.error("Invalid Tiny member mapping");
+                }
+
+                String desc = lines.get(1);
+                String name = getName(lines, 2, count, from);
+                String mapped = getName(lines, 2, count, to);
+                if (type.equals("m")) {
+                    builder.addMethod(owner, name, desc, mapped);
+                } else {
+                    builder.addField(owner, name, desc, mapped);
+                }
+            }
+        }
+    }
+
+    private static void addClass(MapperBuilder builder, String name, String from, String to) {
+        builder.addClass(from, to);
+        // The descriptors in the file use the names of the first namespace
+        builder.addDescriptorClass(name, from);
+    }
+
+    private static String unescape(String s) {
+        int pos = s.indexOf('\\');
+        if (pos < 0) {
+            return s;
+        }
+
+        StringBuilder builder = new StringBuilder(s.length());
+        builder.append(s, 0, pos);
+        for (int i = pos; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                switch (s.charAt(++i)) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case '0':
+                        c = '\0';
+                        break;
+                    default:
+                        c = s.charAt(i);
+                }
+            }
+
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.mapper;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.minecrell.quartz.mappings.AccessTransform;
+
+import java.util.List;
+import java.util.Map;
+
+// The access transforms of a class, compiled for applying them in a single pass over the members.
+//
+// Targets:
+//   ""            the class itself
+//   "name"        a field
+//   "name(desc"   a method, identified by its name and descriptor
+//
+// Field and method targets may contain '*' to match any number of characters, e.g. "*" for all fields, "*(*" for all methods or
+// "get*()*" for all getters without parameters. Exact targets take precedence over wildcards, and the wildcards are matched in
+// the order they were declared.
+public final class AccessMatcher {
+
+    public static final AccessMatcher EMPTY = new AccessMatcher(null, ImmutableMap.<String, AccessTransform>of(),
+            ImmutableMap.<String, AccessTransform>of(), ImmutableList.<Rule>of(), ImmutableList.<Rule>of());
+
+    private static final char WILDCARD = '*';
+
+    private final AccessTransform classTransform;
+
+    private final ImmutableMap<String, AccessTransform> methods;
+    private final ImmutableMap<String, AccessTransform> fields;
+
+    private final ImmutableList<Rule> methodRules;
+    private final ImmutableList<Rule> fieldRules;
+
+    private AccessMatcher(AccessTransform classTransform, ImmutableMap<String, AccessTransform> methods,
+            ImmutableMap<String, AccessTransform> fields, ImmutableList<Rule> methodRules, ImmutableList<Rule> fieldRules) {
+        this.classTransform = classTransform;
+        this.methods = methods;
+        this.fields = fields;
+        this.methodRules = methodRules;
+        this.fieldRules = fieldRules;
+    }
+
+    public static AccessMatcher compile(Map<String, AccessTransform> targets) {
+        if (targets.isEmpty()) {
+            return EMPTY;
+        }
+
+        AccessTransform classTransform = null;
+        ImmutableMap.Builder<String, AccessTransform> methods = ImmutableMap.builder();
+        ImmutableMap.Builder<String, AccessTransform> fields = ImmutableMap.builder();
+        ImmutableList.Builder<Rule> methodRules = ImmutableList.builder();
+        ImmutableList.Builder<Rule> fieldRules = ImmutableList.builder();
+
+        for (Map.Entry<String, AccessTransform> entry : targets.entrySet()) {
+            String target = entry.getKey();
+            AccessTransform access = entry.getValue();
+
+            if (target.isEmpty()) {
+                classTransform = access;
+            } else if (target.indexOf('(') >= 0) {
+                if (target.indexOf(WILDCARD) >= 0) {
+                    methodRules.add(new Rule(target, access));
+                } else {
+                    methods.put(target, access);
+                }
+            } else if (target.indexOf(WILDCARD) >= 0) {
+                fieldRules.add(new Rule(target, access));
+            } else {
+                fields.put(target, access);
+            }
+        }
+
+        return new AccessMatcher(classTransform, methods.build(), fields.build(), methodRules.build(), fieldRules.build());
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    public AccessTransform getClassTransform() {
+        return this.classTransform;
+    }
+
+    public boolean hasMemberTransforms() {
+        return !this.methods.isEmpty() || !this.fields.isEmpty() || !this.methodRules.isEmpty() || !this.fieldRules.isEmpty();
+    }
+
+    public AccessTransform matchMethod(String name, String desc) {
+        if (this.methods.isEmpty() && this.methodRules.isEmpty()) {
+            return null;
+        }
+
+        String target = name + desc;
+        AccessTransform result = this.methods.get(target);
+        if (result != null || name.equals("<clinit>")) {
+            // Static initializers are never matched by wildcards
+            return result;
+        }
+
+        return match(this.methodRules, target);
+    }
+
+    public AccessTransform matchField(String name) {
+        AccessTransform result = this.fields.get(name);
+        return result != null ? result : match(this.fieldRules, name);
+    }
+
+    private static AccessTransform match(List<Rule> rules, String target) {
+        for (Rule rule : rules) {
+            if (rule.matches(target)) {
+                return rule.access;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("class", this.classTransform)
+                .add("methods", this.methods)
+                .add("fields", this.fields)
+                .add("methodRules", this.methodRules)
+                .add("fieldRules", this.fieldRules)
+                .toString();
+    }
+
+    private static final class Rule {
+
+        private final String pattern;
+        private final AccessTransform access;
+
+        // The parts between the wildcards, the first one must be at the start and the last one at the end
+        private final String[] parts;
+
+        private Rule(String pattern, AccessTransform access) {
+            this.pattern = pattern;
+            this.access = access;
+
+            List<String> parts = Splitter.on(WILDCARD).splitToList(pattern);
+            this.parts = parts.toArray(new String[parts.size()]);
+        }
+
+        private boolean matches(String target) {
+            String first = this.parts[0];
+            String last = this.parts[this.parts.length - 1];
+            if (target.length() < first.length() + last.length() || !target.startsWith(first) || !target.endsWith(last)) {
+                return false;
+            }
+
+            int pos = first.length();
+            int end = target.length() - last.length();
+            for (int i = 1; i < this.parts.length - 1; i++) {
+                String part = this.parts[i];
+                if (part.isEmpty()) {
+                    continue;
+                }
+
+                pos = target.indexOf(part, pos);
+                if (pos < 0 || pos + part.length() > end) {
+                    return false;
+                }
+
+                pos += part.length();
+            }
+
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return this.pattern + '=' + this.access;
+        }
+
+    }
+
+}
@@ -43,7 +43,7 @@ public ImmutableBiMap<String, String> getClasses() {
     public String map(String className) {
         if (className == null) return null;
 
-        String name = this.classes.get(className);
+        String name = findMapping(className);
         if (name != null) {
             return name;
         }
@@ -57,6 +57,14 @@ public String map(String className) {
         return className; // Unknown class
     }
 
+    protected String findMapping(String className) {
+        return this.classes.get(className);
+    }
+
+    protected String findUnmapping(String className) {
+        return this.classes.inverse().get(className);
+    }
+
     public Remapper createRemapper() {
         return new Remapper() {
 
@@ -68,7 +76,7 @@ public String map(String typeName) {
     }
 
     public String unmap(String className) {
-        String name = this.classes.inverse().get(className);
+        String name = findUnmapping(className);
         if (name != null) {
             return name;
         }
@@ -102,18 +110,18 @@ public boolean equals(Object o) {
         }
 
         ClassMapper that = (ClassMapper) o;
-        return this.classes.equals(that.classes);
+        return getClasses().equals(that.getClasses());
     }
 
     @Override
     public int hashCode() {
-        return this.classes.hashCode();
+        return getClasses().hashCode();
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
-                .addValue(this.classes)
+                .addValue(getClasses())
                 .toString();
     }
 
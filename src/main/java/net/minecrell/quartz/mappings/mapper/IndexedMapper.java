@@ -0,0 +1,352 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.mapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import net.minecrell.quartz.mappings.AccessModifier;
+import net.minecrell.quartz.mappings.AccessTransform;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class IndexedMapper extends Mapper {
+
+    public static final int MAGIC = 0x514D4150; // QMAP
+    public static final int VERSION = 1;
+
+    // Magic, version and class count
+    public static final int HEADER_SIZE = 12;
+
+    private static final AccessModifier[] modifiers = AccessModifier.values();
+
+    private final ByteBuffer buffer;
+    private final int classCount;
+
+    private final ConcurrentMap<String, Row> mappedRows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Row> unmappedRows = new ConcurrentHashMap<>();
+
+    private final Supplier<Mapper> materialized = Suppliers.memoize(this::materialize);
+
+    public IndexedMapper(ByteBuffer buffer) {
+        super(ImmutableBiMap.<String, String>of(), ImmutableTable.<String, String, String>of(), ImmutableTable.<String, String, String>of(),
+                ImmutableTable.<String, String, AccessTransform>of());
+        this.buffer = requireNonNull(buffer, "buffer");
+
+        checkArgument(buffer.capacity() >= HEADER_SIZE && buffer.getInt(0) == MAGIC, "Invalid mappings index");
+        checkArgument(buffer.getInt(4) == VERSION, "Unsupported mappings index version: %s", buffer.getInt(4));
+        this.classCount = buffer.getInt(8);
+    }
+
+    public int getClassCount() {
+        return this.classCount;
+    }
+
+    @Override
+    protected String findMapping(String className) {
+        Row row = getMappedRow(className);
+        return row != null ? row.unmappedName : null;
+    }
+
+    @Override
+    protected String findUnmapping(String className) {
+        Row row = getUnmappedRow(className);
+        return row != null ? row.mappedName : null;
+    }
+
+    @Override
+    public ImmutableMap<String, String> getMethods(String className) {
+        Row row = getMappedRow(className);
+        return row != null ? row.getMethods() : ImmutableMap.<String, String>of();
+    }
+
+    @Override
+    public ImmutableMap<String, String> getFields(String className) {
+        Row row = getMappedRow(className);
+        return row != null ? row.getFields() : ImmutableMap.<String, String>of();
+    }
+
+    @Override
+    public boolean hasAccessTransforms(String className) {
+        return !getAccessTransforms(className).isEmpty();
+    }
+
+    @Override
+    public ImmutableMap<String, AccessTransform> getAccessTransforms(String className) {
+        Row row = getUnmappedRow(className.replace('.', '/'));
+        return row != null ? row.getAccess() : ImmutableMap.<String, AccessTransform>of();
+    }
+
+    @Override
+    public AccessMatcher getAccessMatcher(String className) {
+        Row row = getUnmappedRow(className.replace('.', '/'));
+        return row != null ? row.getAccessMatcher() : AccessMatcher.EMPTY;
+    }
+
+    // The full tables are only built if someone really needs them
+
+    @Override
+    public ImmutableBiMap<String, String> getClasses() {
+        return this.materialized.get().getClasses();
+    }
+
+    @Override
+    public ImmutableTable<String, String, String> getMethods() {
+        return this.materialized.get().getMethods();
+    }
+
+    @Override
+    public ImmutableTable<String, String, String> getFields() {
+        return this.materialized.get().getFields();
+    }
+
+    @Override
+    public ImmutableTable<String, String, AccessTransform> getAccessTransforms() {
+        return this.materialized.get().getAccessTransforms();
+    }
+
+    private Mapper materialize() {
+        ImmutableBiMap.Builder<String, String> classes = ImmutableBiMap.builder();
+        ImmutableTable.Builder<String, String, String> methods = ImmutableTable.builder();
+        ImmutableTable.Builder<String, String, String> fields = ImmutableTable.builder();
+        ImmutableMap.Builder<String, ImmutableMap<String, AccessTransform>> accessTransforms = ImmutableMap.builder();
+
+        for (int i = 0; i < this.classCount; i++) {
+            Row row = getRow(this.buffer.getInt(HEADER_SIZE + i * 4));
+            classes.put(row.mappedName, row.unmappedName);
+
+            for (Map.Entry<String, String> entry : row.getMethods().entrySet()) {
+                methods.put(row.mappedName, entry.getKey(), entry.getValue());
+            }
+
+            for (Map.Entry<String, String> entry : row.getFields().entrySet()) {
+                fields.put(row.mappedName, entry.getKey(), entry.getValue());
+            }
+
+            if (!row.getAccess().isEmpty()) {
+                accessTransforms.put(row.unmappedName.replace('/', '.'), row.getAccess());
+            }
+        }
+
+        return new Mapper(classes.build(), methods.build(), fields.build(), accessTransforms.build());
+    }
+
+    private Row getMappedRow(String className) {
+        Row row = this.mappedRows.get(className);
+        if (row == null) {
+            // Misses are not cached, most lookups are for library classes that would grow the cache without bound
+            row = findRow(className, 0, true);
+        }
+
+        return row;
+    }
+
+    private Row getUnmappedRow(String className) {
+        Row row = this.unmappedRows.get(className);
+        if (row == null) {
+            row = findRow(className, this.classCount, false);
+            if (row != null) {
+                this.unmappedRows.putIfAbsent(className, row);
+            }
+        }
+
+        return row;
+    }
+
+    private Row findRow(String className, int index, boolean mapped) {
+        int indexStart = HEADER_SIZE + index * 4;
+
+        int low = 0;
+        int high = this.classCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = this.buffer.getInt(indexStart + mid * 4);
+
+            Cursor cursor = new Cursor(offset);
+            String name = cursor.readString();
+            if (!mapped) {
+                name = cursor.readString();
+            }
+
+            int result = name.compareTo(className);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return getRow(offset);
+            }
+        }
+
+        return null;
+    }
+
+    private Row getRow(int offset) {
+        // Rows are shared between the mapped and the unmapped lookup
+        Cursor cursor = new Cursor(offset);
+        String mappedName = cursor.readString();
+        Row row = this.mappedRows.get(mappedName);
+        if (row == null) {
+            row = new Row(mappedName, cursor.readString(), cursor.position);
+            Row current = this.mappedRows.putIfAbsent(mappedName, row);
+            if (current != null) {
+                row = current;
+            }
+        }
+
+        return row;
+    }
+
+    private final class Cursor {
+
+        private int position;
+
+        private Cursor(int position) {
+            this.position = position;
+        }
+
+        private int readInt() {
+            int result = IndexedMapper.this.buffer.getInt(this.position);
+            this.position += 4;
+            return result;
+        }
+
+        private byte readByte() {
+            return IndexedMapper.this.buffer.get(this.position++);
+        }
+
+        private String readString() {
+            int length = IndexedMapper.this.buffer.getShort(this.position) & 0xFFFF;
+            this.position += 2;
+
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = IndexedMapper.this.buffer.get(this.position + i);
+            }
+
+            this.position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private ImmutableMap<String, String> readNames() {
+            int count = readInt();
+            if (count == 0) {
+                return ImmutableMap.of();
+            }
+
+            ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+            for (int i = 0; i < count; i++) {
+                builder.put(readString(), readString());
+            }
+
+            return builder.build();
+        }
+
+        private ImmutableMap<String, AccessTransform> readAccess() {
+            int count = readInt();
+            if (count == 0) {
+                return ImmutableMap.of();
+            }
+
+            ImmutableMap.Builder<String, AccessTransform> builder = ImmutableMap.builder();
+            for (int i = 0; i < count; i++) {
+                builder.put(readString(), new AccessTransform(modifiers[readByte()], readByte() != 0));
+            }
+
+            return builder.build();
+        }
+
+    }
+
+    private final class Row {
+
+        private final String mappedName;
+        private final String unmappedName;
+        private final int membersOffset;
+
+        private volatile ImmutableMap<String, String> methods;
+        private volatile ImmutableMap<String, String> fields;
+        private volatile ImmutableMap<String, AccessTransform> access;
+        private volatile AccessMatcher accessMatcher;
+
+        private Row(String mappedName, String unmappedName, int membersOffset) {
+            this.mappedName = mappedName;
+            this.unmappedName = unmappedName;
+            this.membersOffset = membersOffset;
+        }
+
+        private ImmutableMap<String, String> getMethods() {
+            if (this.methods == null) {
+                load();
+            }
+
+            return this.methods;
+        }
+
+        private ImmutableMap<String, String> getFields() {
+            if (this.fields == null) {
+                load();
+            }
+
+            return this.fields;
+        }
+
+        private ImmutableMap<String, AccessTransform> getAccess() {
+            if (this.access == null) {
+                load();
+            }
+
+            return this.access;
+        }
+
+        private AccessMatcher getAccessMatcher() {
+            AccessMatcher matcher = this.accessMatcher;
+            if (matcher == null) {
+                this.accessMatcher = matcher = AccessMatcher.compile(getAccess());
+            }
+
+            return matcher;
+        }
+
+        private void load() {
+            Cursor cursor = new Cursor(this.membersOffset);
+            ImmutableMap<String, String> methods = cursor.readNames();
+            ImmutableMap<String, String> fields = cursor.readNames();
+            this.access = cursor.readAccess();
+            this.fields = fields;
+            this.methods = methods;
+        }
+
+    }
+
+}
@@ -27,36 +27,113 @@
 
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableTable;
 import net.minecrell.quartz.mappings.AccessTransform;
 
+import java.util.Map;
+
 public class Mapper extends ClassMapper {
 
     protected final ImmutableTable<String, String, String> methods;
     protected final ImmutableTable<String, String, String> fields;
 
     protected final ImmutableTable<String, String, AccessTransform> accessTransforms;
+    // The access transforms of each class in declaration order, the wildcards are matched in this order. The rows of an
+    // ImmutableTable are ordered by the columns of the whole table if it is dense, so they can't be used for this.
+    private final ImmutableMap<String, ImmutableMap<String, AccessTransform>> accessRows;
+    private final ImmutableMap<String, AccessMatcher> accessMatchers;
 
+    // The access transforms of each class are ordered like the rows of the table
     public Mapper(ImmutableBiMap<String, String> classes, ImmutableTable<String, String, String> methods,
             ImmutableTable<String, String, String> fields, ImmutableTable<String, String, AccessTransform> accessTransforms) {
+        this(classes, methods, fields, requireNonNull(accessTransforms, "accessTransforms"), copyRows(accessTransforms));
+    }
+
+    public Mapper(ImmutableBiMap<String, String> classes, ImmutableTable<String, String, String> methods,
+            ImmutableTable<String, String, String> fields, ImmutableMap<String, ImmutableMap<String, AccessTransform>> accessTransforms) {
+        this(classes, methods, fields, createTable(requireNonNull(accessTransforms, "accessTransforms")), accessTransforms);
+    }
+
+    private Mapper(ImmutableBiMap<String, String> classes, ImmutableTable<String, String, String> methods,
+            ImmutableTable<String, String, String> fields, ImmutableTable<String, String, AccessTransform> accessTransforms,
+            ImmutableMap<String, ImmutableMap<String, AccessTransform>> accessRows) {
         super(classes);
         this.methods = requireNonNull(methods, "methods");
         this.fields = requireNonNull(fields, "fields");
-        this.accessTransforms = requireNonNull(accessTransforms, "accessTransforms");
+        this.accessTransforms = accessTransforms;
+        this.accessRows = accessRows;
+        this.accessMatchers = compileAccessMatchers(accessRows);
+    }
+
+    private static ImmutableMap<String, ImmutableMap<String, AccessTransform>> copyRows(ImmutableTable<String, String, AccessTransform> table) {
+        ImmutableMap.Builder<String, ImmutableMap<String, AccessTransform>> builder = ImmutableMap.builder();
+        for (Map.Entry<String, Map<String, AccessTransform>> entry : table.rowMap().entrySet()) {
+            builder.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+        }
+
+        return builder.build();
+    }
+
+    private static ImmutableTable<String, String, AccessTransform> createTable(ImmutableMap<String, ImmutableMap<String, AccessTransform>> rows) {
+        ImmutableTable.Builder<String, String, AccessTransform> builder = ImmutableTable.builder();
+        for (Map.Entry<String, ImmutableMap<String, AccessTransform>> row : rows.entrySet()) {
+            for (Map.Entry<String, AccessTransform> entry : row.getValue().entrySet()) {
+                builder.put(row.getKey(), entry.getKey(), entry.getValue());
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static ImmutableMap<String, AccessMatcher> compileAccessMatchers(ImmutableMap<String, ImmutableMap<String, AccessTransform>> accessRows) {
+        if (accessRows.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        ImmutableMap.Builder<String, AccessMatcher> builder = ImmutableMap.builder();
+        for (Map.Entry<String, ImmutableMap<String, AccessTransform>> entry : accessRows.entrySet()) {
+            builder.put(entry.getKey(), AccessMatcher.compile(entry.getValue()));
+        }
+
+        return builder.build();
     }
 
     public ImmutableTable<String, String, String> getMethods() {
         return this.methods;
     }
 
+    public ImmutableMap<String, String> getMethods(String className) {
+        return this.methods.row(className);
+    }
+
     public ImmutableTable<String, String, String> getFields() {
         return this.fields;
     }
 
+    public ImmutableMap<String, String> getFields(String className) {
+        return this.fields.row(className);
+    }
+
     public ImmutableTable<String, String, AccessTransform> getAccessTransforms() {
         return this.accessTransforms;
     }
 
+    public boolean hasAccessTransforms(String className) {
+        return this.accessRows.containsKey(className);
+    }
+
+    // In declaration order, unlike the rows of getAccessTransforms()
+    public ImmutableMap<String, AccessTransform> getAccessTransforms(String className) {
+        ImmutableMap<String, AccessTransform> result = this.accessRows.get(className);
+        return result != null ? result : ImmutableMap.<String, AccessTransform>of();
+    }
+
+    public AccessMatcher getAccessMatcher(String className) {
+        AccessMatcher matcher = this.accessMatchers.get(className);
+        return matcher != null ? matcher : AccessMatcher.EMPTY;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -70,23 +147,23 @@ public boolean equals(Object o) {
         }
 
         Mapper that = (Mapper) o;
-        return this.methods.equals(that.methods)
-                && this.fields.equals(that.fields)
-                && this.accessTransforms.equals(that.accessTransforms);
+        return getMethods().equals(that.getMethods())
+                && getFields().equals(that.getFields())
+                && getAccessTransforms().equals(that.getAccessTransforms());
     }
 
     @Override
     public int hashCode() {
-        return hash(super.hashCode(), this.methods, this.fields, this.accessTransforms);
+        return hash(super.hashCode(), getMethods(), getFields(), getAccessTransforms());
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
-                .add("classes", super.classes)
-                .add("methods", this.methods)
-                .add("fields", this.fields)
-                .add("accessTransforms", this.accessTransforms)
+                .add("classes", getClasses())
+                .add("methods", getMethods())
+                .add("fields", getFields())
+                .add("accessTransforms", getAccessTransforms())
                 .toString();
     }
 
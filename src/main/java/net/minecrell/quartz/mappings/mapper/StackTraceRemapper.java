@@ -0,0 +1,348 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.mapper;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+// Deobfuscates stack traces. Stack frames only contain the method name, so the methods of each class are indexed by name
+// and names with several different mappings are replaced with all candidates, separated by AMBIGUOUS_SEPARATOR.
+// Remapped frames are cached, so repeated frames in large log files only need a single lookup.
+//
+// Methods that override or implement a mapped method of a supertype are often only mapped on the supertype. They are only
+// found if a lookup for the parents of the obfuscated classes is given, otherwise their names stay obfuscated.
+public class StackTraceRemapper {
+
+    public static final long DEFAULT_CACHE_SIZE = 50000;
+
+    public static final char AMBIGUOUS_SEPARATOR = '|';
+    private static final Splitter AMBIGUOUS_SPLITTER = Splitter.on(AMBIGUOUS_SEPARATOR);
+
+    private static final String FRAME_PREFIX = "at ";
+    private static final String[] EXCEPTION_PREFIXES = { "Caused by: ", "Suppressed: " };
+    private static final String THREAD_PREFIX = "Exception in thread \"";
+
+    private final Mapper mapper;
+    // Returns the super class and interfaces of an obfuscated class, or null if it is unknown
+    private final Function<String, String[]> parents;
+
+    private final ConcurrentMap<String, ImmutableMap<String, String>> methodNames = new ConcurrentHashMap<>();
+    private final LoadingCache<String, String> frames;
+
+    public StackTraceRemapper(Mapper mapper) {
+        this(mapper, DEFAULT_CACHE_SIZE);
+    }
+
+    public StackTraceRemapper(Mapper mapper, long cacheSize) {
+        this(mapper, null, cacheSize);
+    }
+
+    public StackTraceRemapper(Mapper mapper, Function<String, String[]> parents) {
+        this(mapper, parents, DEFAULT_CACHE_SIZE);
+    }
+
+    public StackTraceRemapper(Mapper mapper, Function<String, String[]> parents, long cacheSize) {
+        this.mapper = requireNonNull(mapper, "mapper");
+        this.parents = parents;
+        this.frames = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build(CacheLoader.from(this::mapFrame));
+    }
+
+    public Mapper getMapper() {
+        return this.mapper;
+    }
+
+    public CacheStats getCacheStats() {
+        return this.frames.stats();
+    }
+
+    // Class names in stack traces are binary names, e.g. a.b$c
+    public String mapClass(String className) {
+        return this.mapper.map(className.replace('.', '/')).replace('/', '.');
+    }
+
+    public String mapMethod(String className, String methodName) {
+        ImmutableMap<String, String> names = getMethodNames(className.replace('.', '/'));
+        String result = names.get(methodName);
+        return result != null ? result : methodName;
+    }
+
+    private ImmutableMap<String, String> getMethodNames(String className) {
+        ImmutableMap<String, String> result = this.methodNames.get(className);
+        if (result == null) {
+            // The parents are indexed recursively, which isn't allowed inside computeIfAbsent
+            result = indexMethodNames(className);
+            ImmutableMap<String, String> current = this.methodNames.putIfAbsent(className, result);
+            if (current != null) {
+                result = current;
+            }
+        }
+
+        return result;
+    }
+
+    private ImmutableMap<String, String> indexMethodNames(String className) {
+        Map<String, Set<String>> candidates = new HashMap<>();
+        for (Map.Entry<String, String> entry : this.mapper.getMethods(className).entrySet()) {
+            String key = entry.getKey();
+            String name = key.substring(0, key.indexOf('('));
+            candidates.computeIfAbsent(name, n -> new TreeSet<>()).add(entry.getValue());
+        }
+
+        // The frame may belong to a method that is only mapped on a supertype. Without the descriptor the inherited names
+        // can't be told apart from the own ones, so they are added as further candidates.
+        String[] parents = this.parents != null ? this.parents.apply(className) : null;
+        if (parents != null) {
+            for (String parent : parents) {
+                for (Map.Entry<String, String> entry : getMethodNames(parent).entrySet()) {
+                    Set<String> names = candidates.computeIfAbsent(entry.getKey(), n -> new TreeSet<>());
+                    for (String name : AMBIGUOUS_SPLITTER.split(entry.getValue())) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (Map.Entry<String, Set<String>> entry : candidates.entrySet()) {
+            Set<String> names = entry.getValue();
+            if (names.size() == 1) {
+                builder.put(entry.getKey(), names.iterator().next());
+            } else {
+                // Overloads with different mappings can't be distinguished without the descriptor
+                StringBuilder result = new StringBuilder();
+                for (String name : names) {
+                    if (result.length() > 0) {
+                        result.append(AMBIGUOUS_SEPARATOR);
+                    }
+
+                    result.append(name);
+                }
+
+                builder.put(entry.getKey(), result.toString());
+            }
+        }
+
+        return builder.build();
+    }
+
+    // Maps the qualified method name of a frame, e.g. a.b.c to net.example.Foo.bar
+    private String mapFrame(String frame) {
+        int pos = frame.lastIndexOf('.');
+        if (pos < 0) {
+            return frame;
+        }
+
+        String className = frame.substring(0, pos);
+        return mapClass(className) + '.' + mapMethod(className, frame.substring(pos + 1));
+    }
+
+    public StackTraceElement remap(StackTraceElement element) {
+        String frame = this.frames.getUnchecked(element.getClassName() + '.' + element.getMethodName());
+        int pos = frame.lastIndexOf('.');
+        return new StackTraceElement(frame.substring(0, pos), frame.substring(pos + 1), element.getFileName(), element.getLineNumber());
+    }
+
+    // Replaces the stack traces of the throwable, its causes and suppressed exceptions
+    public void remap(Throwable throwable) {
+        remap(throwable, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private void remap(Throwable throwable, Set<Throwable> visited) {
+        if (throwable == null || !visited.add(throwable)) {
+            return;
+        }
+
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        for (int i = 0; i < stackTrace.length; i++) {
+            stackTrace[i] = remap(stackTrace[i]);
+        }
+
+        throwable.setStackTrace(stackTrace);
+
+        remap(throwable.getCause(), visited);
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            remap(suppressed, visited);
+        }
+    }
+
+    public String remap(String stackTrace) {
+        StringWriter writer = new StringWriter(stackTrace.length());
+        try {
+            remap(new StringReader(stackTrace), writer);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+
+        return writer.toString();
+    }
+
+    // Lines that don't belong to a stack trace are copied unchanged, so complete log files can be passed through
+    public void remap(Reader reader, Writer writer) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        StringBuilder builder = new StringBuilder();
+
+        // The next line is needed to detect the first line of a stack trace
+        String line = in.readLine();
+        while (line != null) {
+            String next = in.readLine();
+            builder.setLength(0);
+            remapLine(line, next, builder);
+            writer.append(builder).append('\n');
+            line = next;
+        }
+
+        writer.flush();
+    }
+
+    public String remapLine(String line) {
+        return remapLine(line, null);
+    }
+
+    // The next line is optional and only used to detect the first line of a stack trace
+    public String remapLine(String line, String next) {
+        StringBuilder builder = new StringBuilder(line.length() + 16);
+        remapLine(line, next, builder);
+        return builder.toString();
+    }
+
+    private void remapLine(String line, String next, StringBuilder builder) {
+        int start = skipWhitespace(line, 0);
+        if (line.startsWith(FRAME_PREFIX, start)) {
+            remapFrame(line, start + FRAME_PREFIX.length(), builder);
+            return;
+        }
+
+        for (String prefix : EXCEPTION_PREFIXES) {
+            if (line.startsWith(prefix, start)) {
+                remapException(line, start + prefix.length(), true, builder);
+                return;
+            }
+        }
+
+        if (line.startsWith(THREAD_PREFIX, start)) {
+            int end = line.indexOf("\" ", start + THREAD_PREFIX.length());
+            if (end >= 0) {
+                remapException(line, end + 2, true, builder);
+                return;
+            }
+        }
+
+        // The first line of a stack trace has no prefix, so other log lines are only changed if they are followed by a frame
+        // or look like the name of an exception class
+        remapException(line, start, next != null && next.startsWith(FRAME_PREFIX, skipWhitespace(next, 0)), builder);
+    }
+
+    private void remapFrame(String line, int start, StringBuilder builder) {
+        int end = line.indexOf('(', start);
+        if (end < 0) {
+            builder.append(line);
+            return;
+        }
+
+        // Skip the class loader and module name, e.g. app//a.b or java.base/java.lang.Thread.run
+        int pos = line.lastIndexOf('/', end);
+        if (pos >= start) {
+            start = pos + 1;
+        }
+
+        builder.append(line, 0, start)
+                .append(this.frames.getUnchecked(line.substring(start, end)))
+                .append(line, end, line.length());
+    }
+
+    private void remapException(String line, int start, boolean header, StringBuilder builder) {
+        int end = line.indexOf(':', start);
+        if (end < 0) {
+            end = line.length();
+        }
+
+        // Only replace the class name if there is one
+        int space = line.indexOf(' ', start);
+        if (end > start && (space < 0 || space >= end)) {
+            String className = line.substring(start, end);
+            if (!header && !isExceptionName(className)) {
+                builder.append(line);
+                return;
+            }
+
+            String mapped = mapClass(className);
+            if (!mapped.equals(className)) {
+                builder.append(line, 0, start).append(mapped).append(line, end, line.length());
+                return;
+            }
+        }
+
+        builder.append(line);
+    }
+
+    private static boolean isExceptionName(String className) {
+        return className.indexOf('.') >= 0 || className.endsWith("Exception") || className.endsWith("Error");
+    }
+
+    private static int skipWhitespace(String line, int pos) {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("cacheStats", getCacheStats())
+                .toString();
+    }
+
+}
@@ -27,6 +27,7 @@
 
 import net.minecrell.quartz.mappings.AccessModifier;
 import net.minecrell.quartz.mappings.AccessTransform;
+import net.minecrell.quartz.mappings.mapper.AccessMatcher;
 import net.minecrell.quartz.mappings.mapper.Mapper;
 import net.minecrell.quartz.mappings.transformer.transform.TreeClassTransformer;
 import org.objectweb.asm.tree.AbstractInsnNode;
@@ -38,7 +39,6 @@
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 public class AccessTransformer implements TreeClassTransformer {
 
@@ -50,53 +50,52 @@ public AccessTransformer(Mapper mapper) {
 
     @Override
     public boolean transform(String name, String transformedName) {
-        return this.mapper.getAccessTransforms().containsRow(transformedName);
+        return this.mapper.hasAccessTransforms(transformedName);
     }
 
     @Override
     public ClassNode transform(String name, String transformedName, ClassNode classNode) {
+        AccessMatcher matcher = this.mapper.getAccessMatcher(transformedName);
+
+        AccessTransform classAccess = matcher.getClassTransform();
+        if (classAccess != null) {
+            // Class mapping
+            classNode.access = classAccess.transform(classNode.access);
+        }
+
+        if (!matcher.hasMemberTransforms()) {
+            return classNode;
+        }
+
         List<MethodNode> overridable = null;
 
-        for (Map.Entry<String, AccessTransform> entry : this.mapper.getAccessTransforms().row(transformedName).entrySet()) {
-            String target = entry.getKey();
-            AccessTransform access = entry.getValue();
-
-            if (target.isEmpty()) {
-                // Class mapping
-                classNode.access = access.transform(classNode.access);
-            } else if (target.indexOf('(') >= 0) {
-                int len = target.length();
-
-                // Method mapping
-                for (MethodNode methodNode : classNode.methods) {
-                    // Fast check before we look more intensively
-                    if (methodNode.name.length() + methodNode.desc.length() != len
-                            || !(target.startsWith(methodNode.name) && target.endsWith(methodNode.desc))) continue;
-
-                    boolean wasPrivate = AccessModifier.PRIVATE.is(methodNode.access);
-                    methodNode.access = access.transform(methodNode.access);
-
-                    // Constructors always use INVOKESPECIAL
-                    // If we changed from private to something else we need to replace all INVOKESPECIAL calls to this method with INVOKEVIRTUAL
-                    // So that overridden methods will be called. Only need to scan this class, because obviously the method was private.
-                    if (wasPrivate && access.getAccess() != AccessModifier.PRIVATE && !methodNode.name.equals("<init>")) {
-                        if (overridable == null) {
-                            overridable = new ArrayList<>(3);
-                        }
+        // Method mapping
+        for (MethodNode methodNode : classNode.methods) {
+            AccessTransform access = matcher.matchMethod(methodNode.name, methodNode.desc);
+            if (access == null) {
+                continue;
+            }
 
-                        overridable.add(methodNode);
-                    }
+            boolean wasPrivate = AccessModifier.PRIVATE.is(methodNode.access);
+            methodNode.access = access.transform(methodNode.access);
 
-                    break;
-                }
-            } else {
-                // Field mapping
-                for (FieldNode fieldNode : classNode.fields) {
-                    if (target.equals(fieldNode.name)) {
-                        fieldNode.access = access.transform(fieldNode.access);
-                        break;
-                    }
+            // Constructors always use INVOKESPECIAL
+            // If we changed from private to something else we need to replace all INVOKESPECIAL calls to this method with INVOKEVIRTUAL
+            // So that overridden methods will be called. Only need to scan this class, because obviously the method was private.
+            if (wasPrivate && access.getAccess() != AccessModifier.PRIVATE && !methodNode.name.equals("<init>")) {
+                if (overridable == null) {
+                    overridable = new ArrayList<>(3);
                 }
+
+                overridable.add(methodNode);
+            }
+        }
+
+        // Field mapping
+        for (FieldNode fieldNode : classNode.fields) {
+            AccessTransform access = matcher.matchField(fieldNode.name);
+            if (access != null) {
+                fieldNode.access = access.transform(fieldNode.access);
             }
         }
 
@@ -0,0 +1,213 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static java.util.Objects.requireNonNull;
+import static org.objectweb.asm.ClassReader.EXPAND_FRAMES;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
+import net.minecrell.quartz.mappings.transformer.provider.ZipClassProvider;
+import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
+import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Remaps a jar using a table of member mappings that was resolved completely before the transformation
+public class ClosedWorldTransformer extends Remapper implements CoreClassTransformer, ClassRenamer {
+
+    private final Mapper mapper;
+
+    private final ImmutableMap<String, String> classes;
+    private final ImmutableMap<String, ImmutableMap<String, String>> methods;
+    private final ImmutableMap<String, ImmutableMap<String, String>> fields;
+
+    private ClosedWorldTransformer(Mapper mapper, ImmutableMap<String, String> classes, ImmutableMap<String, ImmutableMap<String, String>> methods,
+            ImmutableMap<String, ImmutableMap<String, String>> fields) {
+        this.mapper = mapper;
+        this.classes = classes;
+        this.methods = methods;
+        this.fields = fields;
+    }
+
+    // The provider must be able to provide all classes of the jar and its dependencies
+    public static ClosedWorldTransformer create(Mapper mapper, ClassProvider provider, ZipFile jar) throws IOException {
+        ZipClassProvider jarProvider = new ZipClassProvider(jar);
+        ReferenceCollector collector = new ReferenceCollector();
+
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                collector.collect(jarProvider.getClassFile(entry));
+            }
+        }
+
+        return create(mapper, provider, collector);
+    }
+
+    public static ClosedWorldTransformer create(Mapper mapper, ClassProvider provider, ReferenceCollector references) {
+        requireNonNull(mapper, "mapper");
+
+        // Resolve all references through the hierarchy once, the deobfuscation transformer is thread-safe
+        DeobfuscationTransformer resolver = new DeobfuscationTransformer(mapper, provider);
+
+        ImmutableMap.Builder<String, String> classes = ImmutableMap.builder();
+        for (String name : references.getClasses()) {
+            String mapped = mapper.map(name);
+            if (!mapped.equals(name)) {
+                classes.put(name, mapped);
+            }
+        }
+
+        return new ClosedWorldTransformer(mapper, classes.build(),
+                resolve(references.getMethodReferences(), '(', resolver::mapMethodName),
+                resolve(references.getFieldReferences(), ':', resolver::mapFieldName));
+    }
+
+    private interface MemberResolver {
+
+        String resolve(String owner, String name, String desc);
+
+    }
+
+    private static ImmutableMap<String, ImmutableMap<String, String>> resolve(Map<String, Set<String>> references, char separator,
+            MemberResolver resolver) {
+        Map<String, ImmutableMap<String, String>> result = references.entrySet().parallelStream()
+                .map(entry -> {
+                    String owner = entry.getKey();
+                    ImmutableMap.Builder<String, String> members = ImmutableMap.builder();
+                    for (String key : entry.getValue()) {
+                        int pos = key.indexOf(separator);
+                        String name = key.substring(0, pos);
+
+                        // Method descriptors start with the separator, field descriptors follow it
+                        String mapped = resolver.resolve(owner, name, key.substring(separator == '(' ? pos : pos + 1));
+                        if (!mapped.equals(name)) {
+                            members.put(key, mapped);
+                        }
+                    }
+
+                    return new Owner(owner, members.build());
+                })
+                .filter(owner -> !owner.members.isEmpty())
+                .collect(Collectors.toMap(owner -> owner.name, owner -> owner.members));
+
+        return ImmutableMap.copyOf(result);
+    }
+
+    private static final class Owner {
+
+        private final String name;
+        private final ImmutableMap<String, String> members;
+
+        private Owner(String name, ImmutableMap<String, String> members) {
+            this.name = name;
+            this.members = members;
+        }
+
+    }
+
+    public Mapper getMapper() {
+        return this.mapper;
+    }
+
+    public int getMethodCount() {
+        return count(this.methods);
+    }
+
+    public int getFieldCount() {
+        return count(this.fields);
+    }
+
+    private static int count(ImmutableMap<String, ImmutableMap<String, String>> table) {
+        int result = 0;
+        for (ImmutableMap<String, String> members : table.values()) {
+            result += members.size();
+        }
+        return result;
+    }
+
+    @Override
+    public String map(String className) {
+        String result = this.classes.get(className);
+        if (result != null) {
+            return result;
+        }
+
+        // Not referenced from the jar, e.g. when the transformer is used for a different jar
+        return this.mapper.map(className);
+    }
+
+    @Override
+    public String unmap(String className) {
+        return this.mapper.unmap(className);
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String desc) {
+        ImmutableMap<String, String> methods = this.methods.get(owner);
+        if (methods != null) {
+            String result = methods.get(name + desc);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return name;
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String desc) {
+        ImmutableMap<String, String> fields = this.fields.get(owner);
+        if (fields != null) {
+            String result = fields.get(name + ':' + desc);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return name;
+    }
+
+    @Override
+    public int readerFlags() {
+        return EXPAND_FRAMES;
+    }
+
+    @Override
+    public ClassVisitor transform(String name, String transformedName, ClassReader reader, ClassVisitor visitor) {
+        return new RemappingAdapter(visitor, this);
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
+
+import com.google.common.collect.ImmutableList;
+import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+import java.util.List;
+
+// Removes line numbers, local variable tables and source file names from the classes in the given packages
+public class DebugStripTransformer implements CoreClassTransformer {
+
+    private final ImmutableList<String> packages;
+
+    // All classes are stripped if no packages are given
+    public DebugStripTransformer(List<String> packages) {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (String name : packages) {
+            name = name.replace('/', '.');
+            builder.add(name.isEmpty() || name.endsWith(".") ? name : name + '.');
+        }
+
+        this.packages = builder.build();
+    }
+
+    @Override
+    public boolean transform(String name, String transformedName) {
+        if (this.packages.isEmpty()) {
+            return true;
+        }
+
+        for (String prefix : this.packages) {
+            if (transformedName.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int readerFlags() {
+        // The debug information is skipped while reading, so there is nothing left to do here
+        return SKIP_DEBUG;
+    }
+
+    @Override
+    public ClassVisitor transform(String name, String transformedName, ClassReader reader, ClassVisitor visitor) {
+        return visitor;
+    }
+
+}
@@ -22,13 +22,12 @@
  */
 package net.minecrell.quartz.mappings.transformer;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 import static org.objectweb.asm.ClassReader.EXPAND_FRAMES;
 
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
 import net.minecrell.quartz.mappings.mapper.Mapper;
 import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
 import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
@@ -37,31 +36,189 @@
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.commons.Remapper;
-import org.objectweb.asm.commons.RemappingClassAdapter;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
-public class DeobfuscationTransformer extends Remapper implements CoreClassTransformer, ClassRenamer {
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class DeobfuscationTransformer extends Remapper implements CoreClassTransformer, ClassRenamer, DeobfuscationTransformerMXBean, Closeable {
+
+    public static final String MBEAN_DOMAIN = "net.minecrell.quartz.mappings";
+
+    // Rough estimates for a 64-bit JVM with compressed references
+    private static final int CACHE_ENTRY_SIZE = 32;
+    private static final int MAP_SIZE = 48;
+    private static final int ARRAY_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int STRING_SIZE = 40;
+
+    // A jar has usually only a few thousand distinct descriptors and signatures
+    private static final int DESCRIPTOR_CACHE_SIZE = 16384;
 
     private final Mapper mapper;
     private final ClassProvider provider;
+    private final UnmappedMemberFilter filter;
+
+    private final Map<String, MemberMap> methods;
+    private final Map<String, MemberMap> fields;
+
+    // The super class and interfaces of all resolved classes
+    private final Map<String, String[]> hierarchy;
 
-    private final Map<String, Map<String, String>> methods;
-    private final Map<String, Map<String, String>> fields;
+    // Only used if the member maps have a memory budget
+    private final MemberMapStore store;
+    private final SpillingHierarchy spilling;
 
-    private final Set<String> failedMethods = new HashSet<>();
-    private final Set<String> failedFields = new HashSet<>();
+    private final Set<String> failedMethods = ConcurrentHashMap.newKeySet();
+    private final Set<String> failedFields = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder resolvedClasses = new LongAdder();
+    private final LongAdder providerReads = new LongAdder();
+    private final LongAdder providerMisses = new LongAdder();
+    private final LongAdder methodMapHits = new LongAdder();
+    private final LongAdder methodMapMisses = new LongAdder();
+    private final LongAdder fieldMapHits = new LongAdder();
+    private final LongAdder fieldMapMisses = new LongAdder();
+    private final LongAdder filteredLookups = new LongAdder();
+
+    // The remapped descriptors depend on the class mappings, so the caches are never shared with other transformers
+    private final DescriptorCache descriptors = new DescriptorCache(DESCRIPTOR_CACHE_SIZE);
+    private final DescriptorCache signatures = new DescriptorCache(DESCRIPTOR_CACHE_SIZE);
+    private final DescriptorCache typeSignatures = new DescriptorCache(DESCRIPTOR_CACHE_SIZE);
 
     public DeobfuscationTransformer(Mapper mapper, ClassProvider provider) {
+        this(mapper, provider, UnmappedMemberFilter.create(mapper));
+    }
+
+    public DeobfuscationTransformer(Mapper mapper, ClassProvider provider, UnmappedMemberFilter filter) {
         this.mapper = requireNonNull(mapper, "mapper");
         this.provider = requireNonNull(provider, "provider");
+        this.filter = requireNonNull(filter, "filter");
+
+        this.methods = new ConcurrentHashMap<>();
+        this.fields = new ConcurrentHashMap<>();
+        this.hierarchy = new ConcurrentHashMap<>();
+        this.store = null;
+        this.spilling = null;
+    }
+
+    public DeobfuscationTransformer(Mapper mapper, ClassProvider provider, long memoryBudget) throws IOException {
+        this(mapper, provider, memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    // Once the estimated size of the resolved hierarchy exceeds the memory budget, the least recently used classes are removed from
+    // memory and their parents are written to a temporary file in the spill directory. The file is deleted when the transformer is closed.
+    public DeobfuscationTransformer(Mapper mapper, ClassProvider provider, long memoryBudget, Path spillDirectory) throws IOException {
+        this(mapper, provider, UnmappedMemberFilter.create(mapper), memoryBudget, spillDirectory);
+    }
+
+    public DeobfuscationTransformer(Mapper mapper, ClassProvider provider, UnmappedMemberFilter filter, long memoryBudget, Path spillDirectory)
+            throws IOException {
+        checkArgument(memoryBudget > 0, "memoryBudget must be positive");
+        this.mapper = requireNonNull(mapper, "mapper");
+        this.provider = requireNonNull(provider, "provider");
+        this.filter = requireNonNull(filter, "filter");
+
+        this.store = new MemberMapStore(memoryBudget, requireNonNull(spillDirectory, "spillDirectory"));
+        this.spilling = this.store.createHierarchy(mapper);
+        this.methods = this.spilling.getMethods();
+        this.fields = this.spilling.getFields();
+        this.hierarchy = this.spilling.getParents();
+    }
+
+    // Keeps the resolved hierarchy of the previous transformer, except for the changed (obfuscated) classes and their children
+    public DeobfuscationTransformer(Mapper mapper, DeobfuscationTransformer previous, Set<String> changedClasses) {
+        this.mapper = requireNonNull(mapper, "mapper");
+        this.provider = previous.provider;
+        this.filter = UnmappedMemberFilter.create(mapper, previous.filter.getExcludedPackages());
+
+        if (previous.store != null) {
+            try {
+                this.store = new MemberMapStore(previous.store.getBudget(), previous.store.getDirectory());
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+
+            this.spilling = this.store.createHierarchy(mapper);
+            this.methods = this.spilling.getMethods();
+            this.fields = this.spilling.getFields();
+            this.hierarchy = this.spilling.getParents();
+        } else {
+            this.store = null;
+            this.spilling = null;
+            this.methods = new ConcurrentHashMap<>(previous.methods.size());
+            this.fields = new ConcurrentHashMap<>(previous.fields.size());
+            this.hierarchy = new ConcurrentHashMap<>(previous.hierarchy.size());
+        }
+
+        copyValid(previous, changedClasses);
 
-        this.methods = Maps.newHashMapWithExpectedSize(mapper.getMethods().size());
-        this.fields = Maps.newHashMapWithExpectedSize(mapper.getFields().size());
+        // Classes that couldn't be found before won't appear with new mappings
+        this.failedMethods.addAll(previous.failedMethods);
+        this.failedFields.addAll(previous.failedFields);
+    }
+
+    // Keeps the maps of all classes that don't have any of the changed classes in their hierarchy. The hierarchy is checked by
+    // name because the maps of classes without mappings are shared and don't reference their parents.
+    private void copyValid(DeobfuscationTransformer previous, Set<String> changedClasses) {
+        Map<String, Boolean> stale = new HashMap<>();
+        for (String name : changedClasses) {
+            stale.put(name, true);
+        }
+
+        Set<String> names = previous.spilling != null ? previous.spilling.getNames() : previous.hierarchy.keySet();
+        for (String name : names) {
+            if (isStale(name, previous.hierarchy, stale)) {
+                continue;
+            }
+
+            if (this.spilling != null) {
+                // Only the parents are kept, the maps are created again when the class is used
+                try {
+                    this.spilling.putSpilled(name, previous.hierarchy.get(name));
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            } else {
+                this.hierarchy.put(name, previous.hierarchy.get(name));
+                this.methods.put(name, previous.methods.get(name));
+                this.fields.put(name, previous.fields.get(name));
+            }
+        }
+    }
+
+    private static boolean isStale(String name, Map<String, String[]> hierarchy, Map<String, Boolean> stale) {
+        Boolean result = stale.get(name);
+        if (result == null) {
+            result = false;
+
+            // Classes that were never resolved (e.g. excluded or missing classes) are only stale if they have changed themselves
+            String[] parents = hierarchy.get(name);
+            if (parents != null) {
+                for (String parent : parents) {
+                    if (isStale(parent, hierarchy, stale)) {
+                        result = true;
+                        break;
+                    }
+                }
+            }
+
+            stale.put(name, result);
+        }
+
+        return result;
     }
 
     @Override
@@ -74,11 +231,41 @@ public String unmap(String className) {
         return this.mapper.unmap(className);
     }
 
+    @Override
+    public String mapDesc(String desc) {
+        return this.descriptors.get(desc, super::mapDesc);
+    }
+
+    @Override
+    public String mapMethodDesc(String desc) {
+        // Method descriptors start with '(' so they can never conflict with field descriptors
+        return this.descriptors.get(desc, super::mapMethodDesc);
+    }
+
+    @Override
+    public String mapSignature(String signature, boolean typeSignature) {
+        if (signature == null) {
+            return null;
+        }
+
+        return typeSignature ? this.typeSignatures.get(signature, s -> super.mapSignature(s, true))
+                : this.signatures.get(signature, s -> super.mapSignature(s, false));
+    }
+
     @Override
     public String mapFieldName(String owner, String fieldName, String desc) {
-        Map<String, String> fields = getFieldMap(owner);
+        if (this.filter.isFieldUnmapped(owner, fieldName)) {
+            this.filteredLookups.increment();
+            return fieldName;
+        }
+
+        MemberMap fields = getFieldMap(owner);
         if (fields != null) {
             String name = fields.get(fieldName + ':' + desc);
+            if (name == null && this.filter.hasFieldsWithoutDescriptor()) {
+                name = fields.get(fieldName + ':');
+            }
+
             if (name != null) {
                 return name;
             }
@@ -87,13 +274,17 @@ public String mapFieldName(String owner, String fieldName, String desc) {
         return fieldName;
     }
 
-    private Map<String, String> getFieldMap(String owner) {
-        Map<String, String> result = this.fields.get(owner);
+    private MemberMap getFieldMap(String owner) {
+        MemberMap result = this.fields.get(owner);
         if (result != null) {
+            this.fieldMapHits.increment();
             return result;
         }
 
-        if (!this.failedFields.contains(owner)) {
+        if (this.failedFields.contains(owner)) {
+            this.fieldMapHits.increment();
+        } else {
+            this.fieldMapMisses.increment();
             loadSuperMaps(owner);
             if (!this.fields.containsKey(owner)) {
                 this.failedFields.add(owner);
@@ -105,9 +296,15 @@ private Map<String, String> getFieldMap(String owner) {
 
     @Override
     public String mapMethodName(String owner, String methodName, String desc) {
-        Map<String, String> methods = getMethodMap(owner);
+        String key = methodName + desc;
+        if (this.filter.isMethodUnmapped(owner, key)) {
+            this.filteredLookups.increment();
+            return methodName;
+        }
+
+        MemberMap methods = getMethodMap(owner);
         if (methods != null) {
-            String name = methods.get(methodName + desc);
+            String name = methods.get(key);
             if (name != null) {
                 return name;
             }
@@ -116,13 +313,17 @@ public String mapMethodName(String owner, String methodName, String desc) {
         return methodName;
     }
 
-    private Map<String, String> getMethodMap(String owner) {
-        Map<String, String> result = this.methods.get(owner);
+    private MemberMap getMethodMap(String owner) {
+        MemberMap result = this.methods.get(owner);
         if (result != null) {
+            this.methodMapHits.increment();
             return result;
         }
 
-        if (!this.failedMethods.contains(owner)) {
+        if (this.failedMethods.contains(owner)) {
+            this.methodMapHits.increment();
+        } else {
+            this.methodMapMisses.increment();
             loadSuperMaps(owner);
             if (!this.methods.containsKey(owner)) {
                 this.failedMethods.add(owner);
@@ -135,6 +336,7 @@ private Map<String, String> getMethodMap(String owner) {
     private void loadSuperMaps(String name) {
         ClassReader reader;
         try {
+            this.providerReads.increment();
             reader = this.provider.getClass(name);
         } catch (IOException e) {
             throw Throwables.propagate(e);
@@ -142,6 +344,8 @@ private void loadSuperMaps(String name) {
 
         if (reader != null) {
             createSuperMaps(name, reader.getSuperName(), reader.getInterfaces());
+        } else {
+            this.providerMisses.increment();
         }
     }
 
@@ -150,86 +354,289 @@ private void createSuperMaps(String name, String superName, String[] interfaces)
             return;
         }
 
+        this.resolvedClasses.increment();
+
         String[] parents = new String[interfaces.length + 1];
         parents[0] = superName;
         System.arraycopy(interfaces, 0, parents, 1, interfaces.length);
 
         for (String parent : parents) {
-            if (!this.fields.containsKey(parent)) {
+            // Classes in the excluded packages can't inherit any mappings, so there is no need to read them
+            if (!this.fields.containsKey(parent) && !this.filter.isExcluded(parent)) {
                 loadSuperMaps(parent);
             }
         }
 
-        Map<String, String> methods = new HashMap<>();
-        Map<String, String> fields = new HashMap<>();
+        // Only store the own mappings of the class and share the maps of the parents
+        MemberMap methods = MemberMap.create(this.mapper.getMethods(name), parents, this.methods::get);
+        MemberMap fields = MemberMap.create(this.mapper.getFields(name), parents, this.fields::get);
 
-        Map<String, String> m;
-        for (String parent : parents) {
-            m = this.methods.get(parent);
-            if (m != null) {
-                methods.putAll(m);
-            }
-            m = this.fields.get(parent);
-            if (m != null) {
-                fields.putAll(m);
-            }
+        if (this.spilling != null) {
+            this.spilling.put(name, parents, methods, fields);
+        } else {
+            this.hierarchy.put(name, parents);
+            this.methods.put(name, methods);
+            this.fields.put(name, fields);
         }
+    }
 
-        methods.putAll(this.mapper.getMethods().row(name));
-        fields.putAll(this.mapper.getFields().row(name));
+    @Override
+    public long getResolvedClasses() {
+        return this.resolvedClasses.sum();
+    }
 
-        this.methods.put(name, ImmutableMap.copyOf(methods));
-        this.fields.put(name, ImmutableMap.copyOf(fields));
+    @Override
+    public long getProviderReads() {
+        return this.providerReads.sum();
     }
 
     @Override
-    public int readerFlags() {
-        return EXPAND_FRAMES;
+    public long getProviderMisses() {
+        return this.providerMisses.sum();
     }
 
     @Override
-    public ClassVisitor transform(String name, String transformedName, ClassReader reader, ClassVisitor visitor) {
-        return new RemappingAdapter(visitor);
+    public long getMethodMapHits() {
+        return this.methodMapHits.sum();
+    }
+
+    @Override
+    public long getMethodMapMisses() {
+        return this.methodMapMisses.sum();
+    }
+
+    @Override
+    public double getMethodMapHitRatio() {
+        return getRatio(getMethodMapHits(), getMethodMapMisses());
+    }
+
+    @Override
+    public long getFieldMapHits() {
+        return this.fieldMapHits.sum();
+    }
+
+    @Override
+    public long getFieldMapMisses() {
+        return this.fieldMapMisses.sum();
+    }
+
+    @Override
+    public double getFieldMapHitRatio() {
+        return getRatio(getFieldMapHits(), getFieldMapMisses());
+    }
+
+    private static double getRatio(long hits, long misses) {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0;
     }
 
-    private class RemappingAdapter extends RemappingClassAdapter {
+    @Override
+    public long getFilteredLookups() {
+        return this.filteredLookups.sum();
+    }
+
+    @Override
+    public long getDescriptorCacheHits() {
+        return this.descriptors.getHits();
+    }
+
+    @Override
+    public long getDescriptorCacheMisses() {
+        return this.descriptors.getMisses();
+    }
+
+    @Override
+    public double getDescriptorCacheHitRatio() {
+        return getRatio(getDescriptorCacheHits(), getDescriptorCacheMisses());
+    }
+
+    @Override
+    public long getSignatureCacheHits() {
+        return this.signatures.getHits() + this.typeSignatures.getHits();
+    }
+
+    @Override
+    public long getSignatureCacheMisses() {
+        return this.signatures.getMisses() + this.typeSignatures.getMisses();
+    }
+
+    @Override
+    public double getSignatureCacheHitRatio() {
+        return getRatio(getSignatureCacheHits(), getSignatureCacheMisses());
+    }
+
+    @Override
+    public long getCachedDescriptors() {
+        return this.descriptors.size() + this.signatures.size() + this.typeSignatures.size();
+    }
 
-        public RemappingAdapter(ClassVisitor cv) {
-            super(cv, DeobfuscationTransformer.this);
+    @Override
+    public int getCachedMethodMaps() {
+        return this.methods.size();
+    }
+
+    @Override
+    public int getCachedFieldMaps() {
+        return this.fields.size();
+    }
+
+    @Override
+    public int getFailedMethodMaps() {
+        return this.failedMethods.size();
+    }
+
+    @Override
+    public int getFailedFieldMaps() {
+        return this.failedFields.size();
+    }
+
+    @Override
+    public long getEstimatedRetainedSize() {
+        // Maps and class names may be shared, make sure to count them only once
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        return estimateSize(this.methods, seen) + estimateSize(this.fields, seen) + estimateHierarchySize(this.hierarchy, seen)
+                + estimateSize(this.failedMethods, seen) + estimateSize(this.failedFields, seen)
+                + estimateSize(this.descriptors, seen) + estimateSize(this.signatures, seen) + estimateSize(this.typeSignatures, seen);
+    }
+
+    private static long estimateSize(DescriptorCache cache, Set<Object> seen) {
+        long size = 0;
+        for (Map.Entry<String, String> entry : cache.asMap().entrySet()) {
+            size += CACHE_ENTRY_SIZE + estimateSize(entry.getKey(), seen) + estimateSize(entry.getValue(), seen);
         }
 
-        @Override
-        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-            createSuperMaps(name, superName, interfaces != null ? interfaces : ArrayUtils.EMPTY_STRING_ARRAY);
-            super.visit(version, access, name, signature, superName, interfaces);
+        return size;
+    }
+
+    private static long estimateSize(Map<String, MemberMap> cache, Set<Object> seen) {
+        long size = 0;
+        for (Map.Entry<String, MemberMap> entry : cache.entrySet()) {
+            size += CACHE_ENTRY_SIZE + estimateSize(entry.getKey(), seen);
+
+            MemberMap map = entry.getValue();
+            if (seen.add(map)) {
+                // The member maps are shared with the mapper, only the references to the parents are new
+                size += MAP_SIZE + map.getParents().length * REFERENCE_SIZE;
+            }
         }
 
-        @Override
-        public void visitInnerClass(String name, String outerName, String innerName, int access) {
-            if (this.cv != null) {
-                name = this.remapper.mapType(name);
-                this.cv.visitInnerClass(
-                        name,
-                        outerName == null ? null : this.remapper.mapType(outerName),
-                        getSimpleName(name),
-                        access
-                );
+        return size;
+    }
+
+    private static long estimateHierarchySize(Map<String, String[]> hierarchy, Set<Object> seen) {
+        long size = 0;
+        for (Map.Entry<String, String[]> entry : hierarchy.entrySet()) {
+            size += CACHE_ENTRY_SIZE + estimateSize(entry.getKey(), seen) + ARRAY_SIZE;
+            for (String parent : entry.getValue()) {
+                size += REFERENCE_SIZE + estimateSize(parent, seen);
             }
         }
 
+        return size;
     }
 
-    private static String getSimpleName(String name) {
-        int pos = name.lastIndexOf('$');
-        if (pos == -1) {
-            pos = name.lastIndexOf('/');
+    private static long estimateSize(Set<String> cache, Set<Object> seen) {
+        long size = 0;
+        for (String name : cache) {
+            size += CACHE_ENTRY_SIZE + estimateSize(name, seen);
         }
 
-        if (pos >= 0) {
-            return name.substring(pos + 1);
-        } else {
-            return name;
+        return size;
+    }
+
+    private static long estimateSize(String s, Set<Object> seen) {
+        return seen.add(s) ? STRING_SIZE + s.length() * 2 : 0;
+    }
+
+    @Override
+    public long getMemoryBudget() {
+        return this.store != null ? this.store.getBudget() : -1;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return this.store != null ? this.store.getUsage() : getEstimatedRetainedSize();
+    }
+
+    @Override
+    public long getSpilledMaps() {
+        return this.store != null ? this.store.getSpilledMaps() : 0;
+    }
+
+    @Override
+    public int getSpilledMapsOnDisk() {
+        return this.spilling != null ? this.spilling.getSpilledOnDisk() : 0;
+    }
+
+    @Override
+    public long getPagedInMaps() {
+        return this.spilling != null ? this.spilling.getPagedIn() : 0;
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.store != null ? this.store.getEvictions() : 0;
+    }
+
+    @Override
+    public long getSpillFileSize() {
+        return this.store != null ? this.store.getFileSize() : 0;
+    }
+
+    @Override
+    public int trimNegativeCaches() {
+        int size = this.failedMethods.size() + this.failedFields.size();
+        this.failedMethods.clear();
+        this.failedFields.clear();
+        return size;
+    }
+
+    @Override
+    public void resetStatistics() {
+        this.resolvedClasses.reset();
+        this.providerReads.reset();
+        this.providerMisses.reset();
+        this.methodMapHits.reset();
+        this.methodMapMisses.reset();
+        this.fieldMapHits.reset();
+        this.fieldMapMisses.reset();
+        this.filteredLookups.reset();
+        this.descriptors.resetStatistics();
+        this.signatures.resetStatistics();
+        this.typeSignatures.resetStatistics();
+        if (this.store != null) {
+            this.store.resetStatistics();
+        }
+    }
+
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=DeobfuscationTransformer,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.store != null) {
+            this.store.close();
         }
     }
 
+    @Override
+    public int readerFlags() {
+        return EXPAND_FRAMES;
+    }
+
+    @Override
+    public ClassVisitor transform(String name, String transformedName, ClassReader reader, ClassVisitor visitor) {
+        return new RemappingAdapter(visitor, this) {
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                createSuperMaps(name, superName, interfaces != null ? interfaces : ArrayUtils.EMPTY_STRING_ARRAY);
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+        };
+    }
+
 }
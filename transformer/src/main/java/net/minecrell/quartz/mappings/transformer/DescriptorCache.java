@@ -0,0 +1,84 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Lightweight memo for remapped descriptors, an LRU cache costs more than remapping the descriptor again
+final class DescriptorCache {
+
+    private final int maximumSize;
+    private final Map<String, String> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    DescriptorCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    String get(String key, Function<String, String> loader) {
+        String result = this.cache.get(key);
+        if (result != null) {
+            this.hits.increment();
+            return result;
+        }
+
+        this.misses.increment();
+        result = loader.apply(key);
+
+        if (this.cache.size() >= this.maximumSize) {
+            // Start over if the cache is full, the frequently used descriptors will be added again quickly
+            this.cache.clear();
+        }
+
+        this.cache.put(key, result);
+        return result;
+    }
+
+    int size() {
+        return this.cache.size();
+    }
+
+    Map<String, String> asMap() {
+        return this.cache;
+    }
+
+    long getHits() {
+        return this.hits.sum();
+    }
+
+    long getMisses() {
+        return this.misses.sum();
+    }
+
+    void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+    }
+
+}
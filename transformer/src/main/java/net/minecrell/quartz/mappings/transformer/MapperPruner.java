@@ -0,0 +1,127 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import net.minecrell.quartz.mappings.AccessTransform;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
+import net.minecrell.quartz.mappings.transformer.provider.ZipClassProvider;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public final class MapperPruner {
+
+    private MapperPruner() {}
+
+    // The provider should also contain the dependencies of the jar, otherwise the mappings of their parents are lost
+    public static Mapper prune(Mapper mapper, ZipFile jar, ClassProvider provider) throws IOException {
+        ZipClassProvider jarProvider = new ZipClassProvider(jar);
+        ReferenceCollector collector = new ReferenceCollector();
+
+        Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                collector.collect(jarProvider.getClassFile(entry));
+            }
+        }
+
+        return prune(mapper, collector, provider);
+    }
+
+    public static Mapper prune(Mapper mapper, ReferenceCollector references, ClassProvider provider) throws IOException {
+        requireNonNull(mapper, "mapper");
+        requireNonNull(provider, "provider");
+
+        // Member mappings of the parents are needed to resolve inherited members
+        Set<String> classes = new TreeSet<>();
+        Deque<String> queue = new ArrayDeque<>(references.getClasses());
+        while (!queue.isEmpty()) {
+            String name = queue.pop();
+            if (!classes.add(name)) {
+                continue;
+            }
+
+            ClassReader reader = provider.getClass(name);
+            if (reader != null) {
+                if (reader.getSuperName() != null) {
+                    queue.push(reader.getSuperName());
+                }
+
+                for (String iface : reader.getInterfaces()) {
+                    queue.push(iface);
+                }
+            }
+        }
+
+        ImmutableBiMap<String, String> mappedClasses = mapper.getClasses();
+        ImmutableBiMap.Builder<String, String> classMappings = ImmutableBiMap.builder();
+        ImmutableTable.Builder<String, String, String> methods = ImmutableTable.builder();
+        ImmutableTable.Builder<String, String, String> fields = ImmutableTable.builder();
+        ImmutableMap.Builder<String, ImmutableMap<String, AccessTransform>> accessTransforms = ImmutableMap.builder();
+
+        for (String name : classes) {
+            String mapped = mappedClasses.get(name);
+            if (mapped == null) {
+                continue;
+            }
+
+            classMappings.put(name, mapped);
+
+            // Members can only be looked up using the names and descriptors from the jar, anything else is never used
+            fillTable(methods, name, mapper.getMethods(name), references.getMethods());
+            fillTable(fields, name, mapper.getFields(name), references.getFields());
+
+            String className = mapped.replace('/', '.');
+            if (mapper.hasAccessTransforms(className)) {
+                accessTransforms.put(className, mapper.getAccessTransforms(className));
+            }
+        }
+
+        return new Mapper(classMappings.build(), methods.build(), fields.build(), accessTransforms.build());
+    }
+
+    private static void fillTable(ImmutableTable.Builder<String, String, String> builder, String row, Map<String, String> values,
+            Set<String> filter) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (filter.contains(entry.getKey())) {
+                builder.put(row, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+}
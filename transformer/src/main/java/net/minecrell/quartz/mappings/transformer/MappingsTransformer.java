@@ -22,23 +22,52 @@
  */
 package net.minecrell.quartz.mappings.transformer;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
 import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.mapper.StackTraceRemapper;
 import net.minecrell.quartz.mappings.transformer.context.SimpleTransformerContext;
 import net.minecrell.quartz.mappings.transformer.context.TransformerContext;
+import net.minecrell.quartz.mappings.transformer.layout.OutputLayout;
+import net.minecrell.quartz.mappings.transformer.metrics.NullTransformerMetrics;
+import net.minecrell.quartz.mappings.transformer.metrics.TransformerMetrics;
 import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
+import net.minecrell.quartz.mappings.transformer.provider.CompositeClassProvider;
 import net.minecrell.quartz.mappings.transformer.provider.ZipClassProvider;
+import net.minecrell.quartz.mappings.transformer.provider.ZipIndexClassProvider;
 import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
 import net.minecrell.quartz.mappings.transformer.transform.ClassTransformer;
 import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
 import net.minecrell.quartz.mappings.transformer.transform.TreeClassTransformer;
+import net.minecrell.quartz.mappings.transformer.zip.ZipIndex;
+import net.minecrell.quartz.mappings.transformer.zip.ZipWriter;
 import org.objectweb.asm.ClassReader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 public final class MappingsTransformer {
@@ -46,6 +75,11 @@ public final class MappingsTransformer {
     private MappingsTransformer() {}
 
     public static TransformerContext createContext(ClassProvider provider, ClassRenamer renamer, ClassTransformer... transformers) {
+        return createContext(provider, renamer, null, transformers);
+    }
+
+    public static TransformerContext createContext(ClassProvider provider, ClassRenamer renamer, TransformerMetrics metrics,
+            ClassTransformer... transformers) {
         ImmutableList.Builder<CoreClassTransformer> coreTransformers = ImmutableList.builder();
         ImmutableList.Builder<TreeClassTransformer> treeTransformers = ImmutableList.builder();
 
@@ -59,19 +93,46 @@ public static TransformerContext createContext(ClassProvider provider, ClassRena
             }
         }
 
-        return new SimpleTransformerContext(provider, renamer, coreTransformers.build(), treeTransformers.build());
+        return new SimpleTransformerContext(provider, renamer, coreTransformers.build(), treeTransformers.build(), metrics);
     }
 
     public static ClassProvider getProvider(ZipFile zip) {
         return new ZipClassProvider(zip);
     }
 
+    public static ClassProvider getProvider(ZipIndex zip) {
+        return new ZipIndexClassProvider(zip);
+    }
+
+    // Resolves inherited method mappings using the obfuscated classes of the provider, like the DeobfuscationTransformer
+    public static StackTraceRemapper createStackTraceRemapper(Mapper mapper, ClassProvider provider) {
+        return new StackTraceRemapper(mapper, name -> {
+            ClassReader reader;
+            try {
+                reader = provider.getClass(name);
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+
+            if (reader == null || reader.getSuperName() == null) {
+                return null;
+            }
+
+            String[] interfaces = reader.getInterfaces();
+            String[] parents = new String[interfaces.length + 1];
+            parents[0] = reader.getSuperName();
+            System.arraycopy(interfaces, 0, parents, 1, interfaces.length);
+            return parents;
+        });
+    }
+
     public static TransformerContext createContext(ZipFile zip, ClassRenamer renamer, CoreClassTransformer... transformers) {
         return createContext(getProvider(zip), renamer, transformers);
     }
 
     public static void transform(ZipFile zip, ZipOutputStream out, TransformerContext context) throws IOException {
-        ZipClassProvider provider = (ZipClassProvider) context.getClassProvider();
+        TransformerMetrics metrics = context.getMetrics();
+        boolean measure = NullTransformerMetrics.isEnabled(metrics);
 
         Enumeration<? extends ZipEntry> entries = zip.entries();
         while (entries.hasMoreElements()) {
@@ -83,21 +144,293 @@ public static void transform(ZipFile zip, ZipOutputStream out, TransformerContex
                 continue;
             }
 
-            ClassReader reader = provider.getClassFile(entry);
+            long start = measure ? System.nanoTime() : 0;
+            ClassReader reader;
+            try (InputStream in = zip.getInputStream(entry)) {
+                reader = new ClassReader(in);
+            }
+            if (measure) {
+                metrics.classRead(entry.getName(), reader.b.length, System.nanoTime() - start);
+            }
+
             reader = context.getTransformed(reader);
 
+            start = measure ? System.nanoTime() : 0;
             ZipEntry entryOut = new ZipEntry(reader.getClassName() + ".class");
             entryOut.setSize(reader.b.length);
             entryOut.setCompressedSize(-1);
             out.putNextEntry(entryOut);
             out.write(reader.b);
+            if (measure) {
+                metrics.classWritten(entryOut.getName(), reader.b.length, System.nanoTime() - start);
+            }
+        }
+
+        metrics.transformCompleted();
+    }
+
+    public static void transform(Path input, Path output, TransformerContext context) throws IOException {
+        transform(input, output, context, null);
+    }
+
+    public static void transform(Path input, Path output, TransformerContext context, OutputLayout layout) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             ZipWriter out = new ZipWriter(FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE))) {
+            transform(ZipIndex.open(in), out, context, layout);
+        }
+    }
+
+    public static void transform(ZipIndex zip, ZipWriter out, TransformerContext context) throws IOException {
+        transform(zip, out, context, null);
+    }
+
+    // Note: The output stream is closed after the jar was written
+    public static void transform(ZipIndex zip, OutputStream out, TransformerContext context) throws IOException {
+        try (ZipWriter writer = new ZipWriter(Channels.newChannel(out))) {
+            transform(zip, writer, context);
+        }
+    }
+
+    // Reads the entries of the stream into an uncompressed jar in memory, so the classes can be looked up by name
+    public static ZipIndex spool(ZipInputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ZipWriter writer = new ZipWriter(Channels.newChannel(buffer), Deflater.NO_COMPRESSION)) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                writer.write(entry.getName(), ByteStreams.toByteArray(in), ZipWriter.toDosTime(entry.getTime()));
+            }
+        }
+
+        return ZipIndex.read(ByteBuffer.wrap(buffer.toByteArray()));
+    }
+
+    public static void transform(ZipIndex zip, ZipWriter out, TransformerContext context, OutputLayout layout) throws IOException {
+        TransformerMetrics metrics = context.getMetrics();
+        boolean measure = NullTransformerMetrics.isEnabled(metrics);
+
+        List<ZipIndex.Entry> entries = layout != null ? layout.sort(zip.getEntries(), context.getRenamer()) : zip.getEntries();
+        List<String> names = layout != null && layout.isIndexEnabled() ? new ArrayList<>(entries.size()) : null;
+        int dosTime = 0;
+
+        for (ZipIndex.Entry entry : entries) {
+            if (names != null) {
+                if (entry.getName().equals(OutputLayout.INDEX_NAME)) {
+                    continue; // Replaced with the new index
+                }
+
+                dosTime = Math.max(dosTime, entry.getDosTime());
+            }
+
+            if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                // Copy the compressed data as-is, there is no need to inflate it
+                out.copy(zip, entry);
+                if (names != null) {
+                    names.add(entry.getName());
+                }
+                continue;
+            }
+
+            long start = measure ? System.nanoTime() : 0;
+            ClassReader reader = new ClassReader(zip.read(entry));
+            if (measure) {
+                metrics.classRead(entry.getName(), reader.b.length, System.nanoTime() - start);
+            }
+
+            reader = context.getTransformed(reader);
+
+            start = measure ? System.nanoTime() : 0;
+            String name = reader.getClassName() + ".class";
+            out.write(name, reader.b, entry.getDosTime());
+            if (measure) {
+                metrics.classWritten(name, reader.b.length, System.nanoTime() - start);
+            }
+
+            if (names != null) {
+                names.add(name);
+            }
+        }
+
+        if (names != null) {
+            out.write(OutputLayout.INDEX_NAME, layout.createIndex(names), dosTime);
+        }
+
+        metrics.transformCompleted();
+    }
+
+    public static void deobfuscate(Path input, Path output, Mapper mapper) throws IOException {
+        deobfuscate(input, output, mapper, OutputProfile.FULL);
+    }
+
+    public static void deobfuscate(Path input, Path output, Mapper mapper, OutputProfile profile) throws IOException {
+        try (ZipFile zip = new ZipFile(input.toFile())) {
+            ClassProvider provider = getProvider(zip);
+            DeobfuscationTransformer transformer = new DeobfuscationTransformer(mapper, provider);
+            transform(input, output, createContext(provider, transformer, profile.createTransformers(mapper, transformer)));
+        }
+    }
+
+    public static byte[] deobfuscate(byte[] jar, Mapper mapper) throws IOException {
+        return deobfuscate(jar, mapper, OutputProfile.FULL);
+    }
+
+    public static byte[] deobfuscate(byte[] jar, Mapper mapper, OutputProfile profile) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jar.length);
+        deobfuscate(ZipIndex.read(ByteBuffer.wrap(jar)), out, mapper, profile);
+        return out.toByteArray();
+    }
+
+    public static ByteBuffer deobfuscate(ByteBuffer jar, Mapper mapper) throws IOException {
+        return deobfuscate(jar, mapper, OutputProfile.FULL);
+    }
+
+    public static ByteBuffer deobfuscate(ByteBuffer jar, Mapper mapper, OutputProfile profile) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jar.remaining());
+        deobfuscate(ZipIndex.read(jar), out, mapper, profile);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    public static void deobfuscate(ZipInputStream in, OutputStream out, Mapper mapper) throws IOException {
+        deobfuscate(in, out, mapper, OutputProfile.FULL);
+    }
+
+    public static void deobfuscate(ZipInputStream in, OutputStream out, Mapper mapper, OutputProfile profile) throws IOException {
+        deobfuscate(spool(in), out, mapper, profile);
+    }
+
+    public static void deobfuscate(ZipIndex zip, OutputStream out, Mapper mapper) throws IOException {
+        deobfuscate(zip, out, mapper, OutputProfile.FULL);
+    }
+
+    // Note: The output stream is closed after the jar was written
+    public static void deobfuscate(ZipIndex zip, OutputStream out, Mapper mapper, OutputProfile profile) throws IOException {
+        ClassProvider provider = getProvider(zip);
+        DeobfuscationTransformer transformer = new DeobfuscationTransformer(mapper, provider);
+        transform(zip, out, createContext(provider, transformer, profile.createTransformers(mapper, transformer)));
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper) throws IOException {
+        deobfuscate(jars, libraries, mapper, OutputProfile.FULL, 0);
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, long memoryBudget) throws IOException {
+        deobfuscate(jars, libraries, mapper, OutputProfile.FULL, memoryBudget);
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, OutputProfile profile, long memoryBudget)
+            throws IOException {
+        deobfuscate(jars, libraries, mapper, profile, UnmappedMemberFilter.DEFAULT_EXCLUDED_PACKAGES, memoryBudget);
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, OutputProfile profile,
+            List<String> excludedPackages, long memoryBudget) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(jars.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            deobfuscate(jars, libraries, mapper, executor, profile, excludedPackages, memoryBudget);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, ExecutorService executor) throws IOException {
+        deobfuscate(jars, libraries, mapper, executor, OutputProfile.FULL, 0);
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, ExecutorService executor, long memoryBudget)
+            throws IOException {
+        deobfuscate(jars, libraries, mapper, executor, OutputProfile.FULL, memoryBudget);
+    }
+
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, ExecutorService executor, OutputProfile profile,
+            long memoryBudget) throws IOException {
+        deobfuscate(jars, libraries, mapper, executor, profile, UnmappedMemberFilter.DEFAULT_EXCLUDED_PACKAGES, memoryBudget);
+    }
+
+    // Classes in the excluded packages are assumed to have no mappings and are never read from the libraries.
+    // The resolved class hierarchy is moved to a temporary file if it exceeds the memory budget, 0 for no limit
+    public static void deobfuscate(Map<Path, Path> jars, List<Path> libraries, Mapper mapper, ExecutorService executor, OutputProfile profile,
+            List<String> excludedPackages, long memoryBudget) throws IOException {
+        DeobfuscationTransformer transformer = null;
+        List<ZipFile> zips = new ArrayList<>(jars.size() + libraries.size());
+        List<Future<?>> results = new ArrayList<>(jars.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            // All jars share a single provider so classes can extend classes from any of the other jars or libraries
+            List<ClassProvider> providers = new ArrayList<>(jars.size() + libraries.size());
+            for (Path path : jars.keySet()) {
+                ZipFile zip = new ZipFile(path.toFile());
+                zips.add(zip);
+                providers.add(getProvider(zip));
+            }
+            for (Path path : libraries) {
+                ZipFile zip = new ZipFile(path.toFile());
+                zips.add(zip);
+                providers.add(getProvider(zip));
+            }
+
+            ClassProvider provider = new CompositeClassProvider(providers);
+            UnmappedMemberFilter filter = UnmappedMemberFilter.create(mapper, excludedPackages);
+            transformer = memoryBudget > 0
+                    ? new DeobfuscationTransformer(mapper, provider, filter, memoryBudget, Paths.get(System.getProperty("java.io.tmpdir")))
+                    : new DeobfuscationTransformer(mapper, provider, filter);
+            TransformerContext context = createContext(provider, transformer, profile.createTransformers(mapper, transformer));
+
+            for (Map.Entry<Path, Path> entry : jars.entrySet()) {
+                results.add(executor.submit(() -> {
+                    // Skip the remaining jobs if one of them has failed
+                    if (!failed.get()) {
+                        try {
+                            transform(entry.getKey(), entry.getValue(), context);
+                        } catch (Throwable e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                    throw Throwables.propagate(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while deobfuscating jars", e);
+                }
+            }
+        } finally {
+            // Jobs that are already running still use the shared jars and transformer, so wait until all of them have finished
+            failed.set(true);
+            for (Future<?> result : results) {
+                try {
+                    Uninterruptibles.getUninterruptibly(result);
+                } catch (ExecutionException ignored) {
+                    // Only the first failure is reported
+                }
+            }
+
+            for (ZipFile zip : zips) {
+                zip.close();
+            }
+
+            if (transformer != null) {
+                transformer.close();
+            }
         }
     }
 
     public static void deobfuscate(ZipFile zip, ZipOutputStream out, Mapper mapper) throws IOException {
+        deobfuscate(zip, out, mapper, OutputProfile.FULL);
+    }
+
+    public static void deobfuscate(ZipFile zip, ZipOutputStream out, Mapper mapper, OutputProfile profile) throws IOException {
         ClassProvider provider = getProvider(zip);
         DeobfuscationTransformer transformer = new DeobfuscationTransformer(mapper, provider);
-        transform(zip, out, createContext(provider, transformer, transformer, new AccessTransformer(mapper)));
+        transform(zip, out, createContext(provider, transformer, profile.createTransformers(mapper, transformer)));
     }
 
 }
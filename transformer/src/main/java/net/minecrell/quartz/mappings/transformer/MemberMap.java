@@ -0,0 +1,124 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+final class MemberMap {
+
+    private static final MemberMap[] NO_PARENTS = new MemberMap[0];
+
+    static final MemberMap EMPTY = new MemberMap(ImmutableMap.<String, String>of(), NO_PARENTS);
+
+    private final ImmutableMap<String, String> members;
+    private final MemberMap[] parents;
+
+    private MemberMap(ImmutableMap<String, String> members, MemberMap[] parents) {
+        this.members = members;
+        this.parents = parents;
+    }
+
+    // Parents are expected in lookup order, the first parent takes precedence over the following ones
+    static MemberMap create(ImmutableMap<String, String> members, List<MemberMap> parents) {
+        List<MemberMap> result = new ArrayList<>(parents.size());
+        for (MemberMap parent : parents) {
+            if (parent != EMPTY && !containsInstance(result, parent)) {
+                result.add(parent);
+            }
+        }
+
+        if (members.isEmpty()) {
+            if (result.isEmpty()) {
+                return EMPTY;
+            } else if (result.size() == 1) {
+                // Nothing new, just reuse the parent
+                return result.get(0);
+            }
+        }
+
+        return new MemberMap(members, result.isEmpty() ? NO_PARENTS : result.toArray(new MemberMap[result.size()]));
+    }
+
+    // The parents are the names of the super class and the interfaces, the mappings of the interfaces take precedence over the ones
+    // from the super class. Parents that can't be found are skipped.
+    static MemberMap create(ImmutableMap<String, String> members, String[] parents, Function<String, MemberMap> lookup) {
+        List<MemberMap> result = new ArrayList<>(parents.length);
+        for (int i = parents.length - 1; i >= 0; i--) {
+            MemberMap parent = lookup.apply(parents[i]);
+            if (parent != null) {
+                result.add(parent);
+            }
+        }
+
+        return create(members, result);
+    }
+
+    private static boolean containsInstance(List<MemberMap> maps, MemberMap map) {
+        for (MemberMap m : maps) {
+            if (m == map) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    String get(String key) {
+        String result = this.members.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        for (MemberMap parent : this.parents) {
+            result = parent.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    ImmutableMap<String, String> getMembers() {
+        return this.members;
+    }
+
+    MemberMap[] getParents() {
+        return this.parents;
+    }
+
+    void copyTo(Map<String, String> result) {
+        // Apply the parents with the lowest priority first so they are overwritten by the more important ones
+        for (int i = this.parents.length - 1; i >= 0; i--) {
+            this.parents[i].copyTo(result);
+        }
+
+        result.putAll(this.members);
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps the resolved hierarchy within a memory budget. The parents of evicted classes are written to memory mapped segments of a
+// temporary file, so their maps can be created again without reading the class.
+final class MemberMapStore implements Closeable {
+
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final long budget;
+    private final long target;
+    private final Path directory;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private MappedByteBuffer segment;
+    private long fileSize;
+
+    private final List<SpillingHierarchy> hierarchies = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong usage = new AtomicLong();
+    private volatile int epoch;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    MemberMapStore(long budget, Path directory) throws IOException {
+        this.budget = budget;
+        // Evict a bit more than necessary to avoid running the eviction again on the next class
+        this.target = budget / 4 * 3;
+        this.directory = directory;
+
+        Path file = Files.createTempFile(directory, "hierarchy", ".bin");
+        this.channel = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+    }
+
+    SpillingHierarchy createHierarchy(Mapper mapper) {
+        SpillingHierarchy hierarchy = new SpillingHierarchy(this, mapper);
+        this.hierarchies.add(hierarchy);
+        return hierarchy;
+    }
+
+    long getBudget() {
+        return this.budget;
+    }
+
+    Path getDirectory() {
+        return this.directory;
+    }
+
+    long getUsage() {
+        return this.usage.get();
+    }
+
+    int getEpoch() {
+        return this.epoch;
+    }
+
+    void allocate(long size) {
+        if (this.usage.addAndGet(size) > this.budget) {
+            evict();
+        }
+    }
+
+    void release(long size) {
+        this.usage.addAndGet(-size);
+    }
+
+    private void evict() {
+        // Other threads continue with the memory they have, the running eviction will free enough for all of them
+        if (!this.evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            if (this.usage.get() <= this.budget) {
+                return;
+            }
+
+            this.evictions.increment();
+            int epoch = ++this.epoch;
+
+            // Prefer classes that weren't used since the previous eviction
+            for (SpillingHierarchy hierarchy : this.hierarchies) {
+                if (!hierarchy.evict(epoch - 1, this.target)) {
+                    return;
+                }
+            }
+
+            for (SpillingHierarchy hierarchy : this.hierarchies) {
+                if (!hierarchy.evict(epoch, this.target)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    boolean isAboveTarget(long target) {
+        return this.usage.get() > target;
+    }
+
+    synchronized long write(String[] names) throws IOException {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeInt(names.length);
+        for (String name : names) {
+            writeString(out, name);
+        }
+
+        byte[] data = out.toByteArray();
+        if (this.segment == null || this.segment.remaining() < data.length) {
+            this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, this.fileSize, Math.max(SEGMENT_SIZE, data.length));
+            this.fileSize += this.segment.capacity();
+            this.segments.add(this.segment);
+        }
+
+        long location = (long) (this.segments.size() - 1) << 32 | this.segment.position();
+        this.segment.put(data);
+        this.spilled.increment();
+        return location;
+    }
+
+    private static void writeString(ByteArrayDataOutput out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    String[] read(long location) {
+        // The location was published through the index of the hierarchy, so the data is visible to this thread
+        ByteBuffer buffer = this.segments.get((int) (location >>> 32)).duplicate();
+        buffer.position((int) location);
+
+        String[] names = new String[buffer.getInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = readString(buffer);
+        }
+
+        return names;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long getSpilledMaps() {
+        return this.spilled.sum();
+    }
+
+    long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    synchronized long getFileSize() {
+        return this.fileSize;
+    }
+
+    void resetStatistics() {
+        this.evictions.reset();
+        for (SpillingHierarchy hierarchy : this.hierarchies) {
+            hierarchy.resetStatistics();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import com.google.common.collect.ImmutableList;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.transformer.transform.ClassTransformer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Selects the transformers applied in addition to the deobfuscation, depending on who uses the output jar
+public final class OutputProfile {
+
+    public static final OutputProfile FULL = new OutputProfile(Type.FULL, ImmutableList.<String>of());
+    public static final OutputProfile STUB = new OutputProfile(Type.STUB, ImmutableList.<String>of());
+
+    public enum Type {
+        FULL, LEAN, STUB
+    }
+
+    private final Type type;
+    private final ImmutableList<String> packages;
+
+    private OutputProfile(Type type, ImmutableList<String> packages) {
+        this.type = type;
+        this.packages = packages;
+    }
+
+    // Strips debug information from the given packages, or all classes if no packages are given
+    public static OutputProfile lean(String... packages) {
+        return lean(Arrays.asList(packages));
+    }
+
+    public static OutputProfile lean(List<String> packages) {
+        return new OutputProfile(Type.LEAN, ImmutableList.copyOf(packages));
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public List<String> getPackages() {
+        return this.packages;
+    }
+
+    public ClassTransformer[] createTransformers(Mapper mapper, DeobfuscationTransformer deobfuscator) {
+        List<ClassTransformer> transformers = new ArrayList<>(4);
+        transformers.add(deobfuscator);
+
+        if (this.type == Type.LEAN) {
+            transformers.add(new DebugStripTransformer(this.packages));
+        }
+
+        transformers.add(new AccessTransformer(mapper));
+
+        if (this.type == Type.STUB) {
+            // Must run after the access transformer
+            transformers.add(new StubTransformer());
+        }
+
+        return transformers.toArray(new ClassTransformer[transformers.size()]);
+    }
+
+    @Override
+    public String toString() {
+        return this.packages.isEmpty() ? this.type.toString() : this.type + " " + this.packages;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static org.objectweb.asm.Opcodes.ASM5;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Collects the names of all classes and members a class refers to, by recording every name the remapper is asked for
+public class ReferenceCollector extends Remapper {
+
+    private final Set<String> classes = new HashSet<>();
+    private final Set<String> methods = new HashSet<>();
+    private final Set<String> fields = new HashSet<>();
+
+    private final Map<String, Set<String>> methodReferences = new HashMap<>();
+    private final Map<String, Set<String>> fieldReferences = new HashMap<>();
+
+    private final ClassVisitor visitor = new RemappingClassAdapter(new ClassVisitor(ASM5) {
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            return new FieldVisitor(ASM5) {};
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            return new MethodVisitor(ASM5) {};
+        }
+    }, this);
+
+    public void collect(ClassReader reader) {
+        reader.accept(this.visitor, ClassReader.SKIP_FRAMES);
+    }
+
+    public Set<String> getClasses() {
+        return Collections.unmodifiableSet(this.classes);
+    }
+
+    // Method names and descriptors, in the same format used by the mapper
+    public Set<String> getMethods() {
+        return Collections.unmodifiableSet(this.methods);
+    }
+
+    // Field names and descriptors, in the same format used by the mapper
+    public Set<String> getFields() {
+        return Collections.unmodifiableSet(this.fields);
+    }
+
+    // Method names and descriptors grouped by the owner they were referenced with
+    public Map<String, Set<String>> getMethodReferences() {
+        return Collections.unmodifiableMap(this.methodReferences);
+    }
+
+    // Field names and descriptors grouped by the owner they were referenced with
+    public Map<String, Set<String>> getFieldReferences() {
+        return Collections.unmodifiableMap(this.fieldReferences);
+    }
+
+    @Override
+    public String map(String typeName) {
+        if (this.classes.add(typeName)) {
+            // Inner classes without mapping are mapped using their outer class
+            int pos = typeName.lastIndexOf('$');
+            if (pos >= 0) {
+                map(typeName.substring(0, pos));
+            }
+        }
+
+        return typeName;
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String desc) {
+        String key = name + desc;
+        this.methods.add(key);
+        addReference(this.methodReferences, owner, key);
+        return name;
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String desc) {
+        String key = name + ':' + desc;
+        this.fields.add(key);
+        // Fields without descriptor are mapped by their name only
+        this.fields.add(name + ':');
+        addReference(this.fieldReferences, owner, key);
+        return name;
+    }
+
+    private static void addReference(Map<String, Set<String>> references, String owner, String key) {
+        Set<String> keys = references.get(owner);
+        if (keys == null) {
+            keys = new HashSet<>();
+            references.put(owner, keys);
+        }
+
+        keys.add(key);
+    }
+
+}
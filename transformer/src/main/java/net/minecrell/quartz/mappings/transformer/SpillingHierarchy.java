@@ -0,0 +1,331 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// The resolved class hierarchy of a transformer with a memory budget. Once the budget is exceeded, the least recently used classes
+// are removed from memory and only the names of their parents are written to the MemberMapStore. The member rows are shared with
+// the mapper, so the maps are created again from the mapper and the parents when the class is used again.
+//
+// The maps of a class reference the maps of its parents, so only classes without children in memory are evicted.
+final class SpillingHierarchy {
+
+    // Rough estimates for a 64-bit JVM with compressed references
+    private static final int ENTRY_SIZE = 32;
+    private static final int NODE_SIZE = 40;
+    private static final int MAP_SIZE = 48;
+    private static final int ARRAY_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int STRING_SIZE = 40;
+
+    private static final Node[] NO_NODES = new Node[0];
+
+    private final MemberMapStore store;
+    private final Mapper mapper;
+
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    // Locations of the spilled classes, written before the class is removed from memory
+    private final ConcurrentHashMap<String, Long> spilled = new ConcurrentHashMap<>();
+
+    private final LongAdder pagedIn = new LongAdder();
+
+    private final Map<String, MemberMap> methods = new MemberMapView(false);
+    private final Map<String, MemberMap> fields = new MemberMapView(true);
+    private final Map<String, String[]> parents = new ParentsView();
+
+    SpillingHierarchy(MemberMapStore store, Mapper mapper) {
+        this.store = store;
+        this.mapper = mapper;
+    }
+
+    Map<String, MemberMap> getMethods() {
+        return this.methods;
+    }
+
+    Map<String, MemberMap> getFields() {
+        return this.fields;
+    }
+
+    Map<String, String[]> getParents() {
+        return this.parents;
+    }
+
+    // All classes, including the spilled ones
+    Set<String> getNames() {
+        return Sets.union(this.nodes.keySet(), this.spilled.keySet());
+    }
+
+    void put(String name, String[] parents, MemberMap methods, MemberMap fields) {
+        // The class would be resolved to the same maps again, keep the ones that may be already referenced by children
+        if (!this.nodes.containsKey(name)) {
+            Long location = this.spilled.get(name);
+            insert(name, parents, methods, fields, location != null ? location : -1);
+        }
+    }
+
+    // Adds a class that is only loaded once it is used
+    void putSpilled(String name, String[] parents) throws IOException {
+        if (!this.nodes.containsKey(name)) {
+            this.spilled.put(name, this.store.write(parents));
+        }
+    }
+
+    private Node get(String name) {
+        Node node = this.nodes.get(name);
+        if (node != null) {
+            node.touch(this.store.getEpoch());
+            return node;
+        }
+
+        Long location = this.spilled.get(name);
+        if (location == null) {
+            return null;
+        }
+
+        // Page in the parents as well, their maps are shared with the class
+        String[] parents = this.store.read(location);
+        MemberMap methods = MemberMap.create(this.mapper.getMethods(name), parents, this.methods::get);
+        MemberMap fields = MemberMap.create(this.mapper.getFields(name), parents, this.fields::get);
+
+        this.pagedIn.increment();
+        return insert(name, parents, methods, fields, location);
+    }
+
+    private Node insert(String name, String[] parents, MemberMap methods, MemberMap fields, long location) {
+        List<Node> parentNodes = new ArrayList<>(parents.length);
+        boolean ownMethods = methods != MemberMap.EMPTY;
+        boolean ownFields = fields != MemberMap.EMPTY;
+
+        long size = ENTRY_SIZE + NODE_SIZE + ARRAY_SIZE * 2;
+        for (String parent : parents) {
+            size += REFERENCE_SIZE * 2 + STRING_SIZE + parent.length() * 2;
+
+            Node node = this.nodes.get(parent);
+            if (node != null) {
+                parentNodes.add(node);
+
+                // A class without own mappings and a single parent reuses the map of the parent
+                if (node.methods == methods) {
+                    ownMethods = false;
+                }
+                if (node.fields == fields) {
+                    ownFields = false;
+                }
+            }
+        }
+
+        // The members are shared with the mapper, only the references to the parents are new
+        if (ownMethods) {
+            size += MAP_SIZE + methods.getParents().length * REFERENCE_SIZE;
+        }
+        if (ownFields) {
+            size += MAP_SIZE + fields.getParents().length * REFERENCE_SIZE;
+        }
+
+        Node node = new Node(parents, parentNodes.isEmpty() ? NO_NODES : parentNodes.toArray(new Node[parentNodes.size()]), methods, fields,
+                location, size, this.store.getEpoch());
+        Node current = this.nodes.putIfAbsent(name, node);
+        if (current != null) {
+            return current;
+        }
+
+        for (Node parent : node.parentNodes) {
+            parent.children.incrementAndGet();
+        }
+
+        this.store.allocate(node.size);
+        return node;
+    }
+
+    // Returns true if the memory usage is above the target after evicting all classes that weren't used since the specified epoch
+    boolean evict(int epoch, long target) throws IOException {
+        boolean evicted;
+        do {
+            // Evicting a class may allow evicting its parents in the next pass
+            evicted = false;
+            for (Map.Entry<String, Node> e : this.nodes.entrySet()) {
+                if (!this.store.isAboveTarget(target)) {
+                    return false;
+                }
+
+                Node node = e.getValue();
+                if (node.lastUse >= epoch || node.children.get() > 0) {
+                    continue;
+                }
+
+                if (node.location < 0) {
+                    this.spilled.put(e.getKey(), this.store.write(node.parents));
+                }
+
+                if (this.nodes.remove(e.getKey(), node)) {
+                    for (Node parent : node.parentNodes) {
+                        parent.children.decrementAndGet();
+                    }
+
+                    this.store.release(node.size);
+                    evicted = true;
+                }
+            }
+        } while (evicted);
+
+        return this.store.isAboveTarget(target);
+    }
+
+    long getPagedIn() {
+        return this.pagedIn.sum();
+    }
+
+    // Classes that are currently only stored in the spill file
+    int getSpilledOnDisk() {
+        int count = 0;
+        for (String name : this.spilled.keySet()) {
+            if (!this.nodes.containsKey(name)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    void resetStatistics() {
+        this.pagedIn.reset();
+    }
+
+    private final class MemberMapView extends AbstractMap<String, MemberMap> {
+
+        private final boolean fields;
+
+        private MemberMapView(boolean fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public MemberMap get(Object key) {
+            Node node = SpillingHierarchy.this.get((String) key);
+            return node != null ? node.getMap(this.fields) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return SpillingHierarchy.this.nodes.containsKey(key) || SpillingHierarchy.this.spilled.containsKey(key);
+        }
+
+        // Only the classes in memory
+        @Override
+        public int size() {
+            return SpillingHierarchy.this.nodes.size();
+        }
+
+        // Only the classes in memory
+        @Override
+        public Set<Map.Entry<String, MemberMap>> entrySet() {
+            return Maps.transformValues(SpillingHierarchy.this.nodes, node -> node.getMap(this.fields)).entrySet();
+        }
+
+    }
+
+    private final class ParentsView extends AbstractMap<String, String[]> {
+
+        // Spilled classes are not paged in just to look up their parents
+        @Override
+        public String[] get(Object key) {
+            Node node = SpillingHierarchy.this.nodes.get(key);
+            if (node != null) {
+                return node.parents;
+            }
+
+            Long location = SpillingHierarchy.this.spilled.get(key);
+            return location != null ? SpillingHierarchy.this.store.read(location) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return SpillingHierarchy.this.nodes.containsKey(key) || SpillingHierarchy.this.spilled.containsKey(key);
+        }
+
+        // Only the classes in memory
+        @Override
+        public int size() {
+            return SpillingHierarchy.this.nodes.size();
+        }
+
+        // Only the classes in memory
+        @Override
+        public Set<Map.Entry<String, String[]>> entrySet() {
+            return Maps.transformValues(SpillingHierarchy.this.nodes, node -> node.parents).entrySet();
+        }
+
+    }
+
+    private static final class Node {
+
+        private final String[] parents;
+        // The nodes of the parents that were in memory when the class was resolved
+        private final Node[] parentNodes;
+        private final MemberMap methods;
+        private final MemberMap fields;
+
+        private final long location;
+        private final long size;
+        private volatile int lastUse;
+
+        // Number of classes in memory that reference the maps of this class
+        private final AtomicInteger children = new AtomicInteger();
+
+        private Node(String[] parents, Node[] parentNodes, MemberMap methods, MemberMap fields, long location, long size, int epoch) {
+            this.parents = parents;
+            this.parentNodes = parentNodes;
+            this.methods = methods;
+            this.fields = fields;
+            this.location = location;
+            this.size = size;
+            this.lastUse = epoch;
+        }
+
+        private MemberMap getMap(boolean fields) {
+            return fields ? this.fields : this.methods;
+        }
+
+        private void touch(int epoch) {
+            // Avoid writing to the shared entry if it was already used in this epoch
+            if (this.lastUse != epoch) {
+                this.lastUse = epoch;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static org.objectweb.asm.ClassReader.SKIP_CODE;
+import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT;
+import static org.objectweb.asm.Opcodes.ACC_NATIVE;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.ATHROW;
+
+import net.minecrell.quartz.mappings.transformer.transform.TreeClassTransformer;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Iterator;
+
+// Produces API-only classes, must run after the access transformer so only the final private members are removed
+public class StubTransformer implements TreeClassTransformer {
+
+    @Override
+    public int readerFlags() {
+        return SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES;
+    }
+
+    @Override
+    public ClassNode transform(String name, String transformedName, ClassNode classNode) {
+        Iterator<FieldNode> fields = classNode.fields.iterator();
+        while (fields.hasNext()) {
+            if ((fields.next().access & ACC_PRIVATE) != 0) {
+                fields.remove();
+            }
+        }
+
+        Iterator<MethodNode> methods = classNode.methods.iterator();
+        while (methods.hasNext()) {
+            MethodNode methodNode = methods.next();
+            if ((methodNode.access & ACC_PRIVATE) != 0 || methodNode.name.equals("<clinit>")) {
+                methods.remove();
+            } else if ((methodNode.access & (ACC_ABSTRACT | ACC_NATIVE)) == 0) {
+                // Methods still need a body, throw a NullPointerException which doesn't need any frames or constants
+                InsnList instructions = new InsnList();
+                instructions.add(new InsnNode(ACONST_NULL));
+                instructions.add(new InsnNode(ATHROW));
+
+                methodNode.instructions = instructions;
+                methodNode.tryCatchBlocks.clear();
+                methodNode.maxStack = 1;
+
+                int locals = Type.getArgumentsAndReturnSizes(methodNode.desc) >> 2;
+                methodNode.maxLocals = (methodNode.access & ACC_STATIC) != 0 ? locals - 1 : locals;
+            }
+        }
+
+        return classNode;
+    }
+
+}
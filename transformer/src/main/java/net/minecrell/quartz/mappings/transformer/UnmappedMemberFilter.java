@@ -0,0 +1,217 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Table;
+import net.minecrell.quartz.mappings.mapper.IndexedMapper;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+// Proves that member references can't be mapped without resolving the class hierarchy of their owner. This is the case if:
+//   - no class in the mapper has a mapping for the method name and descriptor or for the field name, or
+//   - the owner is in one of the excluded packages. Classes in these packages can only extend classes from the same packages
+//     (e.g. the JDK). Packages with mapped classes are ignored (not checked for indexed mappers).
+public final class UnmappedMemberFilter {
+
+    public static final ImmutableList<String> DEFAULT_EXCLUDED_PACKAGES = ImmutableList.of("java/", "javax/", "sun/", "com/sun/", "jdk/");
+
+    // About 1.5% false positives with 3 hash functions
+    private static final int BITS_PER_MEMBER = 12;
+    private static final int HASHES = 3;
+
+    // The mappers are immutable, so the filter can be shared by all transformers using the same mapper
+    private static final Cache<Mapper, Members> cache = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final ImmutableList<String> excludedPackages;
+
+    // A bloom filter of the mapped method keys and field names. It uses the hash code of the key because it is cached by the string
+    // and needed anyway if the key is looked up in the member maps.
+    private final long[] members;
+    private final int mask;
+    private final boolean fieldsWithoutDescriptor;
+
+    private UnmappedMemberFilter(ImmutableList<String> excludedPackages, Members members) {
+        this.excludedPackages = excludedPackages;
+        if (members != null) {
+            this.members = members.bits;
+            this.mask = members.bits.length * 64 - 1;
+            this.fieldsWithoutDescriptor = members.fieldsWithoutDescriptor;
+        } else {
+            this.members = null;
+            this.mask = 0;
+            this.fieldsWithoutDescriptor = true;
+        }
+    }
+
+    public static UnmappedMemberFilter create(Mapper mapper) {
+        return create(mapper, DEFAULT_EXCLUDED_PACKAGES);
+    }
+
+    public static UnmappedMemberFilter create(Mapper mapper, List<String> excludedPackages) {
+        requireNonNull(mapper, "mapper");
+
+        // The member tables of an indexed mapper are only available after reading the whole index
+        Members members = null;
+        Set<String> owners = null;
+        if (!(mapper instanceof IndexedMapper)) {
+            try {
+                members = cache.get(mapper, () -> createMembers(mapper));
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+
+            owners = mapper.getClasses().keySet();
+        }
+
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (String name : excludedPackages) {
+            name = name.replace('.', '/');
+            if (!name.isEmpty() && !name.endsWith("/")) {
+                name += '/';
+            }
+
+            if (owners == null || !containsPackage(owners, name)) {
+                builder.add(name);
+            }
+        }
+
+        return new UnmappedMemberFilter(builder.build(), members);
+    }
+
+    private static Members createMembers(Mapper mapper) {
+        int bits = Integer.highestOneBit(Math.max(64, (mapper.getMethods().size() + mapper.getFields().size()) * BITS_PER_MEMBER - 1)) << 1;
+        long[] members = new long[bits / 64];
+        for (Table.Cell<String, String, String> cell : mapper.getMethods().cellSet()) {
+            add(members, bits - 1, cell.getColumnKey());
+        }
+
+        boolean fieldsWithoutDescriptor = false;
+        for (Table.Cell<String, String, String> cell : mapper.getFields().cellSet()) {
+            String key = cell.getColumnKey();
+            int pos = key.indexOf(':');
+            add(members, bits - 1, key.substring(0, pos));
+            fieldsWithoutDescriptor |= pos == key.length() - 1;
+        }
+
+        return new Members(members, fieldsWithoutDescriptor);
+    }
+
+    private static void add(long[] members, int mask, String key) {
+        int hash = key.hashCode();
+        int step = getStep(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = hash & mask;
+            members[bit >>> 6] |= 1L << bit;
+            hash += step;
+        }
+    }
+
+    private static int getStep(int hash) {
+        // Derive a second hash for double hashing, it must be odd to reach all bits
+        return Integer.rotateLeft(hash * 0x9E3779B9, 16) | 1;
+    }
+
+    private boolean mightBeMapped(String key) {
+        int hash = key.hashCode();
+        int step = getStep(hash);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = hash & this.mask;
+            if ((this.members[bit >>> 6] & 1L << bit) == 0) {
+                return false;
+            }
+
+            hash += step;
+        }
+
+        return true;
+    }
+
+    private static boolean containsPackage(Set<String> classes, String prefix) {
+        for (String name : classes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public ImmutableList<String> getExcludedPackages() {
+        return this.excludedPackages;
+    }
+
+    public boolean isExcluded(String owner) {
+        for (String prefix : this.excludedPackages) {
+            if (owner.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // The key is the name and descriptor of the method
+    public boolean isMethodUnmapped(String owner, String key) {
+        return (this.members != null && !mightBeMapped(key)) || isExcluded(owner);
+    }
+
+    public boolean isFieldUnmapped(String owner, String name) {
+        return (this.members != null && !mightBeMapped(name)) || isExcluded(owner);
+    }
+
+    // Fields without descriptor (e.g. from SRG mappings) are mapped as "name:" and need to be looked up using their name only
+    public boolean hasFieldsWithoutDescriptor() {
+        return this.fieldsWithoutDescriptor;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("excludedPackages", this.excludedPackages)
+                .add("memberFilter", this.members != null)
+                .toString();
+    }
+
+    private static final class Members {
+
+        private final long[] bits;
+        private final boolean fieldsWithoutDescriptor;
+
+        private Members(long[] bits, boolean fieldsWithoutDescriptor) {
+            this.bits = bits;
+            this.fieldsWithoutDescriptor = fieldsWithoutDescriptor;
+        }
+
+    }
+
+}
@@ -0,0 +1,302 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.context;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import net.minecrell.quartz.mappings.transformer.metrics.TransformerMetrics;
+import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
+import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
+import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
+import net.minecrell.quartz.mappings.transformer.transform.TreeClassTransformer;
+import org.objectweb.asm.ClassReader;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Caches the transformed classes of another context, entries evicted from the memory limit are kept compressed in a second cache
+public class CachingTransformerContext implements TransformerContext {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final TransformerContext context;
+
+    private final Cache<Key, byte[]> cache;
+    private final Cache<Key, Compressed> coldCache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coldHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder compressed = new LongAdder();
+
+    public CachingTransformerContext(TransformerContext context, long maximumBytes) {
+        this(context, maximumBytes, 0);
+    }
+
+    public CachingTransformerContext(TransformerContext context, long maximumBytes, long coldMaximumBytes) {
+        this.context = requireNonNull(context, "context");
+
+        if (coldMaximumBytes > 0) {
+            this.coldCache = CacheBuilder.newBuilder()
+                    .maximumWeight(coldMaximumBytes)
+                    .weigher((Key key, Compressed value) -> value.data.length)
+                    .build();
+        } else {
+            this.coldCache = null;
+        }
+
+        CacheBuilder<Key, byte[]> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Key key, byte[] value) -> value.length);
+
+        if (this.coldCache != null) {
+            builder = builder.removalListener(this::onRemoval);
+        }
+
+        this.cache = builder.build();
+    }
+
+    private void onRemoval(RemovalNotification<Key, byte[]> notification) {
+        if (notification.getCause() == RemovalCause.SIZE) {
+            this.coldCache.put(notification.getKey(), compress(notification.getValue()));
+            this.compressed.increment();
+        }
+    }
+
+    public TransformerContext getContext() {
+        return this.context;
+    }
+
+    @Override
+    public ClassProvider getClassProvider() {
+        return this.context.getClassProvider();
+    }
+
+    @Override
+    public ClassRenamer getRenamer() {
+        return this.context.getRenamer();
+    }
+
+    @Override
+    public List<CoreClassTransformer> getCoreTransformers() {
+        return this.context.getCoreTransformers();
+    }
+
+    @Override
+    public List<TreeClassTransformer> getTreeTransformers() {
+        return this.context.getTreeTransformers();
+    }
+
+    @Override
+    public TransformerMetrics getMetrics() {
+        return this.context.getMetrics();
+    }
+
+    @Override
+    public ClassReader getTransformed(ClassReader reader) {
+        if (reader == null) {
+            return null;
+        }
+
+        // The same class may be read from different sources, so the content is part of the key
+        Key key = new Key(reader.getClassName(), HASH.hashBytes(reader.b).asLong(), reader.b.length);
+
+        byte[] result = this.cache.getIfPresent(key);
+        if (result != null) {
+            this.hits.increment();
+            // ClassReader never modifies the array, so it can be shared
+            return new ClassReader(result);
+        }
+
+        if (this.coldCache != null) {
+            Compressed compressed = this.coldCache.getIfPresent(key);
+            if (compressed != null) {
+                this.coldHits.increment();
+                this.coldCache.invalidate(key);
+
+                result = decompress(compressed);
+                this.cache.put(key, result);
+                return new ClassReader(result);
+            }
+        }
+
+        this.misses.increment();
+        ClassReader transformed = this.context.getTransformed(reader);
+        this.cache.put(key, transformed.b);
+        return transformed;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getColdHits() {
+        return this.coldHits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits() + getColdHits();
+        long total = hits + getMisses();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    public long getCompressedEntries() {
+        return this.compressed.sum();
+    }
+
+    public long getSize() {
+        return this.cache.size();
+    }
+
+    public long getColdSize() {
+        return this.coldCache != null ? this.coldCache.size() : 0;
+    }
+
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+        if (this.coldCache != null) {
+            this.coldCache.invalidateAll();
+        }
+    }
+
+    private static Compressed compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            // Class files compress well, the buffer is grown if necessary
+            byte[] buffer = new byte[data.length / 2 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+
+            return new Compressed(Arrays.copyOf(buffer, length), data.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(Compressed compressed) {
+        // Inflater requires an extra dummy byte at the end when using nowrap
+        byte[] input = Arrays.copyOf(compressed.data, compressed.data.length + 1);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+
+            byte[] result = new byte[compressed.size];
+            int length = 0;
+            while (length < result.length) {
+                int count = inflater.inflate(result, length, result.length - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Truncated cache entry");
+                }
+
+                length += count;
+            }
+
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted cache entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("hits", getHits())
+                .add("coldHits", getColdHits())
+                .add("misses", getMisses())
+                .add("size", getSize())
+                .add("coldSize", getColdSize())
+                .toString();
+    }
+
+    private static final class Key {
+
+        private final String name;
+        private final long hash;
+        private final int length;
+
+        private Key(String name, long hash, int length) {
+            this.name = name;
+            this.hash = hash;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key that = (Key) o;
+            return this.hash == that.hash && this.length == that.length && this.name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) this.hash;
+        }
+
+    }
+
+    private static final class Compressed {
+
+        private final byte[] data;
+        private final int size;
+
+        private Compressed(byte[] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+
+    }
+
+}
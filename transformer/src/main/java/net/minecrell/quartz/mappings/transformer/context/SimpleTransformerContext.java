@@ -25,6 +25,10 @@
 import static java.util.Objects.requireNonNull;
 
 import com.google.common.collect.ImmutableList;
+import net.minecrell.quartz.mappings.transformer.hierarchy.ClassHierarchy;
+import net.minecrell.quartz.mappings.transformer.hierarchy.HierarchyClassWriter;
+import net.minecrell.quartz.mappings.transformer.metrics.NullTransformerMetrics;
+import net.minecrell.quartz.mappings.transformer.metrics.TransformerMetrics;
 import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
 import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
 import net.minecrell.quartz.mappings.transformer.renamer.NullClassRenamer;
@@ -46,12 +50,25 @@ public class SimpleTransformerContext implements TransformerContext {
     private final ImmutableList<CoreClassTransformer> coreTransformers;
     private final ImmutableList<TreeClassTransformer> treeTransformers;
 
+    private final TransformerMetrics metrics;
+    private final boolean measure;
+
+    private final ClassHierarchy hierarchy;
+
     public SimpleTransformerContext(ClassProvider classProvider, ClassRenamer renamer, ImmutableList<CoreClassTransformer> coreTransformers,
             ImmutableList<TreeClassTransformer> treeTransformers) {
+        this(classProvider, renamer, coreTransformers, treeTransformers, null);
+    }
+
+    public SimpleTransformerContext(ClassProvider classProvider, ClassRenamer renamer, ImmutableList<CoreClassTransformer> coreTransformers,
+            ImmutableList<TreeClassTransformer> treeTransformers, TransformerMetrics metrics) {
         this.classProvider = requireNonNull(classProvider, "classProvider");
         this.renamer = renamer != null ? renamer : NullClassRenamer.getInstance();
         this.coreTransformers = requireNonNull(coreTransformers, "coreTransformers");
         this.treeTransformers = requireNonNull(treeTransformers, "treeTransformers");
+        this.metrics = metrics != null ? metrics : NullTransformerMetrics.getInstance();
+        this.measure = NullTransformerMetrics.isEnabled(this.metrics);
+        this.hierarchy = new ClassHierarchy(this.classProvider, this.renamer);
     }
 
     @Override
@@ -74,12 +91,24 @@ public List<TreeClassTransformer> getTreeTransformers() {
         return this.treeTransformers;
     }
 
+    @Override
+    public TransformerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public ClassHierarchy getHierarchy() {
+        return this.hierarchy;
+    }
+
     @Override
     public ClassReader getTransformed(ClassReader reader) {
         if (reader == null) {
             return null;
         }
 
+        // Only measure if someone is interested in the results
+        long start = this.measure ? System.nanoTime() : 0;
+
         String name = reader.getClassName();
         String transformedName = this.renamer.map(name);
         name = name.replace('/', '.');
@@ -108,7 +137,9 @@ public ClassReader getTransformed(ClassReader reader) {
             }
         }
 
-        ClassWriter writer = new ClassWriter(writerFlags);
+        // The default ClassWriter would load the classes to compute the frames
+        ClassWriter writer = (writerFlags & ClassWriter.COMPUTE_FRAMES) != 0 ? new HierarchyClassWriter(writerFlags, this.hierarchy)
+                : new ClassWriter(writerFlags);
         ClassVisitor visitor;
         ClassNode classNode = null;
 
@@ -125,15 +156,30 @@ public ClassReader getTransformed(ClassReader reader) {
 
         reader.accept(visitor, readerFlags);
 
+        if (this.measure) {
+            this.metrics.coreTransformersApplied(name, coreTransformers, System.nanoTime() - start);
+        }
+
         if (!treeTransformers.isEmpty()) {
             for (TreeClassTransformer transformer : treeTransformers) {
-                classNode = transformer.transform(name, transformedName, classNode);
+                if (this.measure) {
+                    long transformerStart = System.nanoTime();
+                    classNode = transformer.transform(name, transformedName, classNode);
+                    this.metrics.treeTransformerApplied(name, transformer, System.nanoTime() - transformerStart);
+                } else {
+                    classNode = transformer.transform(name, transformedName, classNode);
+                }
             }
 
             classNode.accept(writer);
         }
 
-        return new ClassReader(writer.toByteArray());
+        byte[] result = writer.toByteArray();
+        if (this.measure) {
+            this.metrics.classTransformed(name, reader.b.length, result.length, System.nanoTime() - start);
+        }
+
+        return new ClassReader(result);
     }
 
 }
@@ -22,6 +22,8 @@
  */
 package net.minecrell.quartz.mappings.transformer.context;
 
+import net.minecrell.quartz.mappings.transformer.metrics.NullTransformerMetrics;
+import net.minecrell.quartz.mappings.transformer.metrics.TransformerMetrics;
 import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
 import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
 import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
@@ -41,11 +43,26 @@ public interface TransformerContext {
 
     List<TreeClassTransformer> getTreeTransformers();
 
+    default TransformerMetrics getMetrics() {
+        return NullTransformerMetrics.getInstance();
+    }
+
     default ClassReader getTransformed(String name) throws IOException {
         if (name == null) {
             return null;
         }
 
+        TransformerMetrics metrics = getMetrics();
+        if (NullTransformerMetrics.isEnabled(metrics)) {
+            long start = System.nanoTime();
+            ClassReader reader = getClassProvider().getClass(name);
+            if (reader != null) {
+                metrics.classRead(name, reader.b.length, System.nanoTime() - start);
+            }
+
+            return getTransformed(reader);
+        }
+
         return getTransformed(getClassProvider().getClass(name));
     }
 
@@ -0,0 +1,197 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.hierarchy;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.base.Throwables;
+import net.minecrell.quartz.mappings.transformer.provider.ClassProvider;
+import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
+import net.minecrell.quartz.mappings.transformer.renamer.NullClassRenamer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Resolves the hierarchy of the transformed (renamed) classes without loading them
+public class ClassHierarchy {
+
+    public static final String OBJECT = "java/lang/Object";
+
+    private static final ClassInfo MISSING = new ClassInfo(null, null, new String[0], false);
+
+    private final ClassProvider provider;
+    private final ClassRenamer renamer;
+
+    private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+
+    public ClassHierarchy(ClassProvider provider, ClassRenamer renamer) {
+        this.provider = requireNonNull(provider, "provider");
+        this.renamer = renamer != null ? renamer : NullClassRenamer.getInstance();
+    }
+
+    public ClassInfo getClass(String name) {
+        ClassInfo info = this.classes.get(name);
+        if (info == null) {
+            info = loadClass(name);
+            this.classes.put(name, info);
+        }
+
+        return info != MISSING ? info : null;
+    }
+
+    private ClassInfo loadClass(String name) {
+        try {
+            ClassReader reader = this.provider.getClass(this.renamer.unmap(name));
+            if (reader != null) {
+                return createInfo(name, reader, true);
+            }
+
+            // Fall back to the classes of the JDK and the libraries on the classpath, but only read them
+            try (InputStream in = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+                if (in != null) {
+                    return createInfo(name, new ClassReader(in), false);
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+
+        return MISSING;
+    }
+
+    private ClassInfo createInfo(String name, ClassReader reader, boolean rename) {
+        String superName = reader.getSuperName();
+        String[] interfaces = reader.getInterfaces();
+
+        if (rename) {
+            if (superName != null) {
+                superName = this.renamer.map(superName);
+            }
+
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaces[i] = this.renamer.map(interfaces[i]);
+            }
+        }
+
+        return new ClassInfo(name, superName, interfaces, (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+    }
+
+    public boolean isAssignableFrom(String type, String other) {
+        if (type.equals(other) || type.equals(OBJECT)) {
+            return true;
+        }
+
+        Set<String> visited = new HashSet<>();
+        return isSubtype(other, type, visited);
+    }
+
+    private boolean isSubtype(String name, String type, Set<String> visited) {
+        if (name == null || !visited.add(name)) {
+            return false;
+        }
+
+        if (name.equals(type)) {
+            return true;
+        }
+
+        ClassInfo info = getClass(name);
+        if (info == null) {
+            return false;
+        }
+
+        if (isSubtype(info.getSuperName(), type, visited)) {
+            return true;
+        }
+
+        for (String iface : info.getInterfaces()) {
+            if (isSubtype(iface, type, visited)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Same semantics as ClassWriter.getCommonSuperClass, but without loading any classes
+    public String getCommonSuperClass(String type1, String type2) {
+        if (isAssignableFrom(type1, type2)) {
+            return type1;
+        }
+        if (isAssignableFrom(type2, type1)) {
+            return type2;
+        }
+
+        ClassInfo info = getClass(type1);
+        ClassInfo other = getClass(type2);
+        if (info == null || other == null || info.isInterface() || other.isInterface()) {
+            return OBJECT;
+        }
+
+        String name = info.getSuperName();
+        while (name != null && !isAssignableFrom(name, type2)) {
+            info = getClass(name);
+            name = info != null ? info.getSuperName() : null;
+        }
+
+        return name != null ? name : OBJECT;
+    }
+
+    public static final class ClassInfo {
+
+        private final String name;
+        private final String superName;
+        private final String[] interfaces;
+        private final boolean isInterface;
+
+        ClassInfo(String name, String superName, String[] interfaces, boolean isInterface) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.isInterface = isInterface;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getSuperName() {
+            return this.superName;
+        }
+
+        public String[] getInterfaces() {
+            return this.interfaces.clone();
+        }
+
+        public boolean isInterface() {
+            return this.isInterface;
+        }
+
+    }
+
+}
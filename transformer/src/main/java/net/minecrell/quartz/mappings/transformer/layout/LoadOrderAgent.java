@@ -0,0 +1,92 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.layout;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.ProtectionDomain;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Records the order in which classes are loaded, start the JVM with -javaagent:<transformer jar>=<profile>[,<prefix>]
+public final class LoadOrderAgent implements ClassFileTransformer {
+
+    private final String prefix;
+
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Queue<String> classes = new ConcurrentLinkedQueue<>();
+
+    private LoadOrderAgent(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public static void premain(String args, Instrumentation instrumentation) {
+        if (args == null || args.isEmpty()) {
+            throw new IllegalArgumentException("Missing path for the load order profile");
+        }
+
+        String[] parts = args.split(",", 2);
+        Path profile = Paths.get(parts[0]);
+
+        LoadOrderAgent agent = new LoadOrderAgent(parts.length > 1 ? parts[1] : "");
+        instrumentation.addTransformer(agent);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                agent.write(profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "LoadOrderAgent"));
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+            byte[] classfileBuffer) {
+        // Only record the class, we never change it
+        if (className != null && classBeingRedefined == null && className.startsWith(this.prefix) && this.seen.add(className)) {
+            this.classes.add(className);
+        }
+
+        return null;
+    }
+
+    private void write(Path profile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(profile, StandardCharsets.UTF_8))) {
+            writer.println("# Class load order");
+            for (String name : this.classes) {
+                writer.println(name);
+            }
+        }
+    }
+
+}
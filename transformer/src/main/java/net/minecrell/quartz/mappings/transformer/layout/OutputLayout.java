@@ -0,0 +1,155 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.layout;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecrell.quartz.mappings.transformer.renamer.ClassRenamer;
+import net.minecrell.quartz.mappings.transformer.zip.ZipIndex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Controls the order of the entries in the output jar and the optional jar index
+public final class OutputLayout {
+
+    public static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+    public static final String INDEX_NAME = "META-INF/INDEX.LIST";
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private static final int FIRST = -1;
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    private final ImmutableMap<String, Integer> loadOrder;
+    private final String indexName;
+
+    private OutputLayout(ImmutableMap<String, Integer> loadOrder, String indexName) {
+        this.loadOrder = loadOrder;
+        this.indexName = indexName;
+    }
+
+    public static OutputLayout loadOrder(List<String> classes) {
+        Map<String, Integer> loadOrder = new HashMap<>(classes.size());
+        for (String name : classes) {
+            if (!loadOrder.containsKey(name)) {
+                loadOrder.put(name, loadOrder.size());
+            }
+        }
+
+        return new OutputLayout(ImmutableMap.copyOf(loadOrder), null);
+    }
+
+    // Reads a profile recorded by the LoadOrderAgent, one internal class name per line
+    public static OutputLayout read(Path profile) throws IOException {
+        List<String> classes = new ArrayList<>();
+        for (String line : Files.readAllLines(profile, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                classes.add(line.replace('.', '/'));
+            }
+        }
+
+        return loadOrder(classes);
+    }
+
+    public OutputLayout withIndex(String jarName) {
+        return new OutputLayout(this.loadOrder, jarName);
+    }
+
+    public boolean isIndexEnabled() {
+        return this.indexName != null;
+    }
+
+    // The entries of the profile come first, in load order. All other entries keep their original order.
+    public List<ZipIndex.Entry> sort(List<ZipIndex.Entry> entries, ClassRenamer renamer) {
+        int[] ranks = new int[entries.size()];
+        Integer[] index = new Integer[entries.size()];
+
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = getRank(entries.get(i).getName(), renamer);
+            index[i] = i;
+        }
+
+        // Stable, so the unknown entries keep their original order
+        Arrays.sort(index, Comparator.comparingInt(i -> ranks[i]));
+
+        List<ZipIndex.Entry> result = new ArrayList<>(ranks.length);
+        for (int i : index) {
+            result.add(entries.get(i));
+        }
+
+        return result;
+    }
+
+    private int getRank(String name, ClassRenamer renamer) {
+        if (name.equals("META-INF/") || name.equals(MANIFEST_NAME)) {
+            // JarInputStream expects the manifest at the beginning of the jar
+            return FIRST;
+        }
+
+        if (name.endsWith(CLASS_EXTENSION)) {
+            Integer rank = this.loadOrder.get(renamer.map(name.substring(0, name.length() - CLASS_EXTENSION.length())));
+            if (rank != null) {
+                return rank;
+            }
+        }
+
+        return UNKNOWN;
+    }
+
+    public byte[] createIndex(Collection<String> entries) {
+        // Packages (or files in the root directory) contained in the jar
+        Set<String> names = new TreeSet<>();
+        for (String entry : entries) {
+            if (entry.startsWith("META-INF/")) {
+                continue;
+            }
+
+            int pos = entry.lastIndexOf('/');
+            if (pos == entry.length() - 1) {
+                continue; // Directory
+            }
+
+            names.add(pos >= 0 ? entry.substring(0, pos) : entry);
+        }
+
+        StringBuilder builder = new StringBuilder("JarIndex-Version: 1.0\n\n").append(this.indexName).append('\n');
+        for (String name : names) {
+            builder.append(name).append('\n');
+        }
+
+        return builder.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
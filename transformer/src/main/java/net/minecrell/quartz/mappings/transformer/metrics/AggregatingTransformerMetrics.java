@@ -0,0 +1,247 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.metrics;
+
+import com.google.common.base.Joiner;
+import net.minecrell.quartz.mappings.transformer.transform.ClassTransformer;
+import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
+import net.minecrell.quartz.mappings.transformer.transform.TreeClassTransformer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AggregatingTransformerMetrics implements TransformerMetrics {
+
+    private static final int SLOWEST_CLASSES = 10;
+
+    private final PrintStream report;
+
+    private final Histogram read = new Histogram();
+    private final Histogram transform = new Histogram();
+    private final Histogram write = new Histogram();
+    private final ConcurrentMap<String, Histogram> transformers = new ConcurrentHashMap<>();
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private final PriorityQueue<ClassTiming> slowest = new PriorityQueue<>();
+
+    public AggregatingTransformerMetrics() {
+        this(null);
+    }
+
+    public AggregatingTransformerMetrics(PrintStream report) {
+        this.report = report;
+    }
+
+    public Histogram getRead() {
+        return this.read;
+    }
+
+    public Histogram getTransform() {
+        return this.transform;
+    }
+
+    public Histogram getWrite() {
+        return this.write;
+    }
+
+    public Map<String, Histogram> getTransformers() {
+        return Collections.unmodifiableMap(this.transformers);
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    public long getBytesIn() {
+        return this.bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return this.bytesOut.sum();
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    @Override
+    public void classRead(String name, int size, long nanos) {
+        this.read.record(nanos);
+        this.bytesRead.add(size);
+    }
+
+    @Override
+    public void coreTransformersApplied(String name, List<CoreClassTransformer> transformers, long nanos) {
+        if (!transformers.isEmpty()) {
+            getHistogram(transformers).record(nanos);
+        }
+    }
+
+    @Override
+    public void treeTransformerApplied(String name, TreeClassTransformer transformer, long nanos) {
+        getHistogram(Collections.singletonList(transformer)).record(nanos);
+    }
+
+    private Histogram getHistogram(List<? extends ClassTransformer> transformers) {
+        List<String> names = new ArrayList<>(transformers.size());
+        for (ClassTransformer transformer : transformers) {
+            names.add(transformer.getClass().getSimpleName());
+        }
+
+        String key = Joiner.on(" + ").join(names);
+        Histogram histogram = this.transformers.get(key);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram current = this.transformers.putIfAbsent(key, histogram);
+            if (current != null) {
+                histogram = current;
+            }
+        }
+
+        return histogram;
+    }
+
+    @Override
+    public void classTransformed(String name, int inputSize, int outputSize, long nanos) {
+        this.transform.record(nanos);
+        this.bytesIn.add(inputSize);
+        this.bytesOut.add(outputSize);
+
+        synchronized (this.slowest) {
+            if (this.slowest.size() < SLOWEST_CLASSES) {
+                this.slowest.add(new ClassTiming(name, nanos));
+            } else if (this.slowest.peek().nanos < nanos) {
+                this.slowest.poll();
+                this.slowest.add(new ClassTiming(name, nanos));
+            }
+        }
+    }
+
+    @Override
+    public void classWritten(String name, int size, long nanos) {
+        this.write.record(nanos);
+        this.bytesWritten.add(size);
+    }
+
+    @Override
+    public void transformCompleted() {
+        if (this.report != null) {
+            this.report.print(getReport());
+        }
+    }
+
+    public String getReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Transformed ").append(this.transform.getCount()).append(" classes in ")
+                .append(formatTime(this.transform.getTotal()))
+                .append(" (in: ").append(formatSize(getBytesIn())).append(", out: ").append(formatSize(getBytesOut())).append(")\n");
+
+        appendHistogram(builder, "Read (" + formatSize(getBytesRead()) + ")", this.read);
+        for (Map.Entry<String, Histogram> entry : this.transformers.entrySet()) {
+            appendHistogram(builder, entry.getKey(), entry.getValue());
+        }
+        appendHistogram(builder, "Transform", this.transform);
+        appendHistogram(builder, "Write (" + formatSize(getBytesWritten()) + ")", this.write);
+
+        List<ClassTiming> slowest;
+        synchronized (this.slowest) {
+            slowest = new ArrayList<>(this.slowest);
+        }
+
+        if (!slowest.isEmpty()) {
+            Collections.sort(slowest, Collections.reverseOrder());
+
+            builder.append("Slowest classes:\n");
+            for (ClassTiming timing : slowest) {
+                builder.append("  ").append(timing.name).append(": ").append(formatTime(timing.nanos)).append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static void appendHistogram(StringBuilder builder, String name, Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+
+        builder.append("  ").append(name).append(": count=").append(histogram.getCount())
+                .append(", total=").append(formatTime(histogram.getTotal()))
+                .append(", mean=").append(formatTime((long) histogram.getMean()))
+                .append(", p50=").append(formatTime(histogram.getPercentile(50)))
+                .append(", p90=").append(formatTime(histogram.getPercentile(90)))
+                .append(", p99=").append(formatTime(histogram.getPercentile(99)))
+                .append(", max=").append(formatTime(histogram.getMax()))
+                .append('\n');
+    }
+
+    private static String formatTime(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(10)) {
+            return nanos + " ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(10)) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos) + " us";
+        } else {
+            return TimeUnit.NANOSECONDS.toMillis(nanos) + " ms";
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 10 * 1024) {
+            return bytes + " B";
+        } else if (bytes < 10 * 1024 * 1024) {
+            return (bytes / 1024) + " KiB";
+        } else {
+            return (bytes / (1024 * 1024)) + " MiB";
+        }
+    }
+
+    private static final class ClassTiming implements Comparable<ClassTiming> {
+
+        private final String name;
+        private final long nanos;
+
+        private ClassTiming(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int compareTo(ClassTiming o) {
+            return Long.compare(this.nanos, o.nanos);
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.metrics;
+
+import net.minecrell.quartz.mappings.transformer.transform.CoreClassTransformer;
+import net.minecrell.quartz.mappings.transformer.transform.TreeClassTransformer;
+
+import java.util.List;
+
+public interface TransformerMetrics {
+
+    default void classRead(String name, int size, long nanos) {
+    }
+
+    // Core transformers are chained visitors and run in a single pass over the class
+    default void coreTransformersApplied(String name, List<CoreClassTransformer> transformers, long nanos) {
+    }
+
+    default void treeTransformerApplied(String name, TreeClassTransformer transformer, long nanos) {
+    }
+
+    default void classTransformed(String name, int inputSize, int outputSize, long nanos) {
+    }
+
+    default void classWritten(String name, int size, long nanos) {
+    }
+
+    default void transformCompleted() {
+    }
+
+}
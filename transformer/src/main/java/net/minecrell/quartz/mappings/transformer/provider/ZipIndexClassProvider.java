@@ -0,0 +1,48 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.provider;
+
+import static java.util.Objects.requireNonNull;
+
+import net.minecrell.quartz.mappings.transformer.zip.ZipIndex;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+
+public class ZipIndexClassProvider implements ClassProvider {
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final ZipIndex zip;
+
+    public ZipIndexClassProvider(ZipIndex zip) {
+        this.zip = requireNonNull(zip, "zip");
+    }
+
+    @Override
+    public ClassReader getClass(String name) throws IOException {
+        ZipIndex.Entry entry = this.zip.getEntry(name + CLASS_EXTENSION);
+        return entry != null ? new ClassReader(this.zip.read(entry)) : null;
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.zip;
+
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+public class ZipIndex {
+
+    static final int LOCAL_HEADER = 0x04034b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER = 0x02014b50;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_HEADER = 0x06054b50;
+    static final int END_HEADER_SIZE = 22;
+
+    static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    static final int FLAG_UTF8 = 1 << 11;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+
+    private final ImmutableList<Entry> entries;
+    private final ImmutableMap<String, Entry> names;
+
+    private ZipIndex(ByteBuffer buffer, FileChannel channel) throws ZipException {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = channel;
+
+        int end = findEndHeader(this.buffer);
+        int count = this.buffer.getShort(end + 10) & 0xFFFF;
+        long centralOffset = this.buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || centralOffset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+        Map<String, Entry> names = new HashMap<>(count);
+
+        int pos = (int) centralOffset;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > this.buffer.limit() || this.buffer.getInt(pos) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory header at " + pos);
+            }
+
+            int nameLength = this.buffer.getShort(pos + 28) & 0xFFFF;
+            int extraLength = this.buffer.getShort(pos + 30) & 0xFFFF;
+            int commentLength = this.buffer.getShort(pos + 32) & 0xFFFF;
+
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = this.buffer.get(pos + CENTRAL_HEADER_SIZE + j);
+            }
+
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), name,
+                    this.buffer.getShort(pos + 8) & 0xFFFF,
+                    this.buffer.getShort(pos + 10) & 0xFFFF,
+                    this.buffer.getInt(pos + 12),
+                    this.buffer.getInt(pos + 16),
+                    this.buffer.getInt(pos + 20) & 0xFFFFFFFFL,
+                    this.buffer.getInt(pos + 24) & 0xFFFFFFFFL,
+                    this.buffer.getInt(pos + 38),
+                    this.buffer.getInt(pos + 42) & 0xFFFFFFFFL);
+
+            if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localHeaderOffset == 0xFFFFFFFFL) {
+                throw new ZipException("ZIP64 archives are not supported");
+            }
+
+            entries.add(entry);
+            names.put(entry.name, entry);
+
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        this.entries = entries.build();
+        this.names = ImmutableMap.copyOf(names);
+    }
+
+    private static int findEndHeader(ByteBuffer buffer) throws ZipException {
+        int min = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int pos = buffer.limit() - END_HEADER_SIZE; pos >= min; pos--) {
+            if (buffer.getInt(pos) == END_HEADER) {
+                return pos;
+            }
+        }
+
+        throw new ZipException("Missing end of central directory, not a ZIP file?");
+    }
+
+    // The jar starts at the current position of the buffer and ends at its limit
+    public static ZipIndex read(ByteBuffer buffer) throws ZipException {
+        return new ZipIndex(requireNonNull(buffer, "buffer").slice(), null);
+    }
+
+    public static ZipIndex open(FileChannel channel) throws IOException {
+        // The mapped buffer stays valid after the channel was closed, but raw copies use the channel if it is still open
+        return new ZipIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), channel);
+    }
+
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    public Entry getEntry(String name) {
+        return this.names.get(name);
+    }
+
+    FileChannel getChannel() {
+        return this.channel != null && this.channel.isOpen() ? this.channel : null;
+    }
+
+    long getDataOffset(Entry entry) throws ZipException {
+        int pos = (int) entry.localHeaderOffset;
+        if (pos + LOCAL_HEADER_SIZE > this.buffer.limit() || this.buffer.getInt(pos) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header for " + entry.name);
+        }
+
+        return pos + LOCAL_HEADER_SIZE + (this.buffer.getShort(pos + 26) & 0xFFFF) + (this.buffer.getShort(pos + 28) & 0xFFFF);
+    }
+
+    public ByteBuffer getData(Entry entry) throws ZipException {
+        ByteBuffer result = this.buffer.duplicate();
+        int offset = (int) getDataOffset(entry);
+        result.limit(offset + (int) entry.compressedSize).position(offset);
+        return result.slice();
+    }
+
+    public byte[] read(Entry entry) throws IOException {
+        ByteBuffer data = getData(entry);
+        byte[] result = new byte[(int) entry.size];
+
+        if (entry.method == ZipEntry.STORED) {
+            data.get(result);
+            return result;
+        } else if (entry.method != ZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+
+        // Inflater requires an extra dummy byte at the end when using nowrap
+        byte[] input = new byte[data.remaining() + 1];
+        data.get(input, 0, input.length - 1);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+
+            int pos = 0;
+            while (pos < result.length) {
+                int count = inflater.inflate(result, pos, result.length - pos);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                pos += count;
+            }
+
+            if (pos != result.length) {
+                throw new ZipException("Unexpected end of compressed data for " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data for " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        return result;
+    }
+
+    public static final class Entry {
+
+        private final String name;
+        final byte[] rawName;
+
+        final int flags;
+        final int method;
+        final int dosTime;
+        final int crc;
+        final long compressedSize;
+        final long size;
+        final int externalAttributes;
+        final long localHeaderOffset;
+
+        Entry(String name, byte[] rawName, int flags, int method, int dosTime, int crc, long compressedSize, long size,
+                int externalAttributes, long localHeaderOffset) {
+            this.name = name;
+            this.rawName = rawName;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.externalAttributes = externalAttributes;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+
+        public int getMethod() {
+            return this.method;
+        }
+
+        public int getDosTime() {
+            return this.dosTime;
+        }
+
+        public long getCompressedSize() {
+            return this.compressedSize;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+
+    }
+
+}
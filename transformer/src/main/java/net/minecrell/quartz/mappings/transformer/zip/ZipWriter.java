@@ -0,0 +1,251 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.zip;
+
+import static java.util.Objects.requireNonNull;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.CENTRAL_HEADER;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.CENTRAL_HEADER_SIZE;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.END_HEADER;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.END_HEADER_SIZE;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.FLAG_DATA_DESCRIPTOR;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.FLAG_UTF8;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.LOCAL_HEADER;
+import static net.minecrell.quartz.mappings.transformer.zip.ZipIndex.LOCAL_HEADER_SIZE;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+public class ZipWriter implements Closeable {
+
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final WritableByteChannel channel;
+    private long offset;
+
+    private final List<ZipIndex.Entry> entries = new ArrayList<>();
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private byte[] deflateBuffer = new byte[8192];
+
+    private boolean finished;
+
+    public ZipWriter(WritableByteChannel channel) {
+        this(channel, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    // Entries are stored without compression with Deflater.NO_COMPRESSION
+    public ZipWriter(WritableByteChannel channel, int level) {
+        this.channel = requireNonNull(channel, "channel");
+        this.deflater = new Deflater(level, true);
+    }
+
+    public static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16); // 1980-01-01
+        }
+
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    public void copy(ZipIndex zip, ZipIndex.Entry entry) throws IOException {
+        // The sizes are known, so we never need a data descriptor
+        ZipIndex.Entry result = new ZipIndex.Entry(entry.getName(), entry.rawName, entry.flags & ~FLAG_DATA_DESCRIPTOR, entry.method,
+                entry.dosTime, entry.crc, entry.compressedSize, entry.size, entry.externalAttributes, this.offset);
+        writeLocalHeader(result);
+
+        FileChannel source = zip.getChannel();
+        if (source != null && this.channel instanceof FileChannel) {
+            // Let the operating system copy the compressed data directly
+            long position = zip.getDataOffset(entry);
+            long remaining = entry.compressedSize;
+            while (remaining > 0) {
+                long count = source.transferTo(position, remaining, this.channel);
+                if (count <= 0) {
+                    // The compressed size runs past the end of a truncated or corrupt jar
+                    throw new EOFException("Unexpected end of ZIP file in " + entry.getName());
+                }
+
+                position += count;
+                remaining -= count;
+            }
+
+            this.offset += entry.compressedSize;
+        } else {
+            write(zip.getData(entry));
+        }
+
+        this.entries.add(result);
+    }
+
+    public void write(String name, byte[] data, int dosTime) throws IOException {
+        this.crc.reset();
+        this.crc.update(data, 0, data.length);
+
+        this.deflater.reset();
+        this.deflater.setInput(data);
+        this.deflater.finish();
+
+        int length = 0;
+        while (!this.deflater.finished()) {
+            if (length == this.deflateBuffer.length) {
+                this.deflateBuffer = Arrays.copyOf(this.deflateBuffer, this.deflateBuffer.length * 2);
+            }
+
+            length += this.deflater.deflate(this.deflateBuffer, length, this.deflateBuffer.length - length);
+        }
+
+        // Store the data if compressing it doesn't help
+        boolean stored = length >= data.length;
+
+        ZipIndex.Entry entry = new ZipIndex.Entry(name, name.getBytes(StandardCharsets.UTF_8), FLAG_UTF8,
+                stored ? ZipEntry.STORED : ZipEntry.DEFLATED, dosTime, (int) this.crc.getValue(), stored ? data.length : length, data.length,
+                0, this.offset);
+        writeLocalHeader(entry);
+
+        if (stored) {
+            write(ByteBuffer.wrap(data));
+        } else {
+            write(ByteBuffer.wrap(this.deflateBuffer, 0, length));
+        }
+
+        this.entries.add(entry);
+    }
+
+    private void writeLocalHeader(ZipIndex.Entry entry) throws IOException {
+        if (this.offset > MAX_OFFSET || this.entries.size() >= MAX_ENTRIES) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.rawName.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER);
+        header.putShort((short) getVersion(entry));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt(entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.rawName.length);
+        header.putShort((short) 0); // No extra fields
+        header.put(entry.rawName);
+
+        header.flip();
+        write(header);
+    }
+
+    private static int getVersion(ZipIndex.Entry entry) {
+        return entry.method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        this.offset += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+    }
+
+    public void finish() throws IOException {
+        if (this.finished) {
+            return;
+        }
+
+        this.finished = true;
+        long centralOffset = this.offset;
+
+        for (ZipIndex.Entry entry : this.entries) {
+            ByteBuffer header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.rawName.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CENTRAL_HEADER);
+            header.putShort((short) VERSION_DEFLATED);
+            header.putShort((short) getVersion(entry));
+            header.putShort((short) entry.flags);
+            header.putShort((short) entry.method);
+            header.putInt(entry.dosTime);
+            header.putInt(entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.rawName.length);
+            header.putShort((short) 0); // Extra length
+            header.putShort((short) 0); // Comment length
+            header.putShort((short) 0); // Disk number
+            header.putShort((short) 0); // Internal attributes
+            header.putInt(entry.externalAttributes);
+            header.putInt((int) entry.localHeaderOffset);
+            header.put(entry.rawName);
+
+            header.flip();
+            write(header);
+        }
+
+        if (this.offset > MAX_OFFSET) {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_HEADER);
+        end.putShort((short) 0); // Disk number
+        end.putShort((short) 0); // Disk with central directory
+        end.putShort((short) this.entries.size());
+        end.putShort((short) this.entries.size());
+        end.putInt((int) (this.offset - centralOffset));
+        end.putInt((int) centralOffset);
+        end.putShort((short) 0); // Comment length
+
+        end.flip();
+        write(end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            this.deflater.end();
+            this.channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.perf;
+
+import net.minecrell.quartz.mappings.AccessModifier;
+import net.minecrell.quartz.mappings.AccessTransform;
+import net.minecrell.quartz.mappings.MappedClass;
+import net.minecrell.quartz.mappings.loader.CompiledMappings;
+import net.minecrell.quartz.mappings.loader.IndexedMappings;
+import net.minecrell.quartz.mappings.loader.Mappings;
+import net.minecrell.quartz.mappings.mapper.AccessMatcher;
+import net.minecrell.quartz.mappings.mapper.IndexedMapper;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Checks that overlapping wildcard access transforms are matched in declaration order by all mapper implementations.
+// The two classes declare the same rules in opposite order, so a mapper that orders them by the whole table fails for one of them.
+public final class AccessOrderCheck {
+
+    private static final AccessTransform PUBLIC = new AccessTransform(AccessModifier.PUBLIC, false);
+    private static final AccessTransform PROTECTED = new AccessTransform(AccessModifier.PROTECTED, false);
+
+    private AccessOrderCheck() {}
+
+    public static void main(String[] args) throws IOException {
+        Map<String, MappedClass> mappings = new LinkedHashMap<>();
+
+        MappedClass generalFirst = new MappedClass("a");
+        generalFirst.getAccess().put("*(*", PROTECTED);
+        generalFirst.getAccess().put("get*()*", PUBLIC);
+        generalFirst.getAccess().put("*", PROTECTED);
+        generalFirst.getAccess().put("field*", PUBLIC);
+        mappings.put("net/example/GeneralFirst", generalFirst);
+
+        MappedClass specificFirst = new MappedClass("b");
+        specificFirst.getAccess().put("field*", PUBLIC);
+        specificFirst.getAccess().put("*", PROTECTED);
+        specificFirst.getAccess().put("get*()*", PUBLIC);
+        specificFirst.getAccess().put("*(*", PROTECTED);
+        mappings.put("net/example/SpecificFirst", specificFirst);
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        IndexedMappings.write(index, mappings);
+
+        List<String> compiled = CompiledMappings.write(mappings);
+
+        Map<String, Mapper> mappers = new LinkedHashMap<>();
+        mappers.put("json", Mappings.createMapper(mappings));
+        mappers.put("compiled", CompiledMappings.createMapper(compiled.toArray(new String[compiled.size()])));
+        mappers.put("indexed", new IndexedMapper(ByteBuffer.wrap(index.toByteArray())));
+        mappers.put("exported", Mappings.createMapper(Mappings.createMappings(mappers.get("json"))));
+
+        boolean failed = false;
+        for (Map.Entry<String, Mapper> entry : mappers.entrySet()) {
+            Mapper mapper = entry.getValue();
+            failed |= !check(entry.getKey(), mapper.getAccessMatcher("net.example.GeneralFirst"), PROTECTED, PROTECTED);
+            failed |= !check(entry.getKey(), mapper.getAccessMatcher("net.example.SpecificFirst"), PUBLIC, PUBLIC);
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+
+        System.out.println("Access transforms are matched in declaration order");
+    }
+
+    private static boolean check(String name, AccessMatcher matcher, AccessTransform method, AccessTransform field) {
+        AccessTransform methodResult = matcher.matchMethod("getX", "()I");
+        AccessTransform fieldResult = matcher.matchField("fieldX");
+        if (method.equals(methodResult) && field.equals(fieldResult)) {
+            return true;
+        }
+
+        System.err.println(name + ": expected " + method + " and " + field + ", got " + methodResult + " and " + fieldResult + " for " + matcher);
+        return false;
+    }
+
+}
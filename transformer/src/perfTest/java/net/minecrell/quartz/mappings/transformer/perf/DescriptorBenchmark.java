@@ -0,0 +1,157 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.perf;
+
+import static org.objectweb.asm.Opcodes.ASM5;
+
+import net.minecrell.quartz.mappings.loader.Mappings;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.transformer.DeobfuscationTransformer;
+import net.minecrell.quartz.mappings.transformer.MappingsTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Compares the CPU time and allocations of remapping descriptors with and without the descriptor cache
+public final class DescriptorBenchmark {
+
+    private static final int ITERATIONS = Integer.getInteger("perf.iterations", 20);
+
+    private DescriptorBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("quartz-perf");
+        Path jar = dir.resolve("descriptors.jar");
+
+        try {
+            Mapper mapper = Mappings.createMapper(new JarGenerator(5000, 5, 2, 2, 10, 5).generate(jar));
+            List<String> fieldDescs = new ArrayList<>();
+            List<String> methodDescs = new ArrayList<>();
+
+            try (ZipFile zip = new ZipFile(jar.toFile())) {
+                collectDescriptors(zip, fieldDescs, methodDescs);
+
+                Remapper uncached = new Remapper() {
+
+                    @Override
+                    public String map(String typeName) {
+                        return mapper.map(typeName);
+                    }
+                };
+
+                DeobfuscationTransformer cached = new DeobfuscationTransformer(mapper, MappingsTransformer.getProvider(zip));
+
+                // Warm up both implementations first
+                run(uncached, fieldDescs, methodDescs);
+                run(cached, fieldDescs, methodDescs);
+                cached.resetStatistics();
+
+                System.out.printf("%d references per iteration, %d iterations%n", fieldDescs.size() + methodDescs.size(), ITERATIONS);
+                measure("uncached", uncached, fieldDescs, methodDescs);
+                measure("cached", cached, fieldDescs, methodDescs);
+                System.out.printf("descriptor cache hit ratio: %.4f (%d entries)%n", cached.getDescriptorCacheHitRatio(),
+                        cached.getCachedDescriptors());
+            }
+        } finally {
+            Files.deleteIfExists(jar);
+            Files.delete(dir);
+        }
+    }
+
+    private static void collectDescriptors(ZipFile zip, List<String> fieldDescs, List<String> methodDescs) throws IOException {
+        ClassVisitor visitor = new ClassVisitor(ASM5) {
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                fieldDescs.add(desc);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                methodDescs.add(desc);
+                return new MethodVisitor(ASM5) {
+
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                        fieldDescs.add(desc);
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                        methodDescs.add(desc);
+                    }
+                };
+            }
+        };
+
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".class")) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    new ClassReader(in).accept(visitor, ClassReader.SKIP_FRAMES);
+                }
+            }
+        }
+    }
+
+    private static void measure(String name, Remapper remapper, List<String> fieldDescs, List<String> methodDescs) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long cpu = threads.getCurrentThreadCpuTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            run(remapper, fieldDescs, methodDescs);
+        }
+
+        cpu = threads.getCurrentThreadCpuTime() - cpu;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("%-9s %8.1f ms CPU, %10.1f MiB allocated%n", name, cpu / 1e6, allocated / (1024.0 * 1024.0));
+    }
+
+    private static void run(Remapper remapper, List<String> fieldDescs, List<String> methodDescs) {
+        for (String desc : fieldDescs) {
+            remapper.mapDesc(desc);
+        }
+        for (String desc : methodDescs) {
+            remapper.mapMethodDesc(desc);
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.perf;
+
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT;
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_8;
+
+import com.google.common.base.Objects;
+import net.minecrell.quartz.mappings.MappedClass;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Generates jars that look like the output of an obfuscator, together with matching mappings
+public final class JarGenerator {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String PACKAGE = "net/minecrell/quartz/generated/";
+
+    private final int classes;
+    private final int depth;
+    private final int interfaces;
+    private final int innerDepth;
+    private final int methods;
+    private final int fields;
+
+    private final int interfaceCount;
+
+    public JarGenerator(int classes, int depth, int interfaces, int innerDepth, int methods, int fields) {
+        this.classes = classes;
+        this.depth = Math.max(1, depth);
+        this.interfaces = interfaces;
+        this.innerDepth = innerDepth;
+        this.methods = methods;
+        this.fields = fields;
+
+        this.interfaceCount = interfaces > 0 ? Math.max(interfaces, classes / 10) : 0;
+    }
+
+    public int getClassCount() {
+        return this.interfaceCount + this.classes * (1 + this.innerDepth);
+    }
+
+    public Map<String, MappedClass> generate(Path jar) throws IOException {
+        Map<String, MappedClass> mappings = new LinkedHashMap<>();
+
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(jar)))) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.write("Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+
+            for (int i = 0; i < this.interfaceCount; i++) {
+                generateInterface(out, mappings, i);
+            }
+
+            for (int i = 0; i < this.classes; i++) {
+                generateClass(out, mappings, i);
+            }
+        }
+
+        return mappings;
+    }
+
+    private void generateInterface(ZipOutputStream out, Map<String, MappedClass> mappings, int index) throws IOException {
+        String name = obfName(index);
+        MappedClass mapping = new MappedClass(name);
+
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(V1_8, ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT, name, null, OBJECT, null);
+
+        for (int i = 0; i < this.methods; i++) {
+            String desc = "(L" + name + ";)V";
+            writer.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, interfaceMethod(i), desc, null, null).visitEnd();
+            mapping.getMethods().put(interfaceMethod(i) + desc, "interface" + index + "Method" + i);
+        }
+
+        writer.visitEnd();
+        write(out, mappings, name, PACKAGE + "Interface" + index, mapping, writer);
+    }
+
+    private void generateClass(ZipOutputStream out, Map<String, MappedClass> mappings, int index) throws IOException {
+        int type = this.interfaceCount + index;
+        String name = obfName(type);
+        String superName = index % this.depth == 0 ? OBJECT : obfName(type - 1);
+
+        String[] interfaces = new String[Math.min(this.interfaces, this.interfaceCount)];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = obfName((index + i) % this.interfaceCount);
+        }
+
+        String deobfName = PACKAGE + "Class" + index;
+        generateClass(out, mappings, name, deobfName, superName, interfaces, null, 0);
+
+        String outer = name;
+        String deobfOuter = deobfName;
+        for (int i = 1; i <= this.innerDepth; i++) {
+            String inner = outer + '$' + obfName(i - 1);
+            String deobfInner = deobfOuter + "$Inner" + i;
+            generateClass(out, mappings, inner, deobfInner, OBJECT, new String[0], outer, i);
+
+            outer = inner;
+            deobfOuter = deobfInner;
+        }
+    }
+
+    private void generateClass(ZipOutputStream out, Map<String, MappedClass> mappings, String name, String deobfName, String superName,
+            String[] interfaces, String outer, int level) throws IOException {
+        MappedClass mapping = new MappedClass(name);
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, superName, interfaces);
+
+        // Inner class attributes for the outer class and the direct inner class
+        if (outer != null) {
+            writer.visitInnerClass(name, outer, obfName(level - 1), ACC_PUBLIC | ACC_STATIC);
+        }
+        if (level < this.innerDepth) {
+            writer.visitInnerClass(name + '$' + obfName(level), name, obfName(level), ACC_PUBLIC | ACC_STATIC);
+        }
+
+        for (int i = 0; i < this.fields; i++) {
+            String desc = i % 2 == 0 ? "I" : 'L' + name + ';';
+            writer.visitField(ACC_PRIVATE, obfName(i), desc, null, null).visitEnd();
+            mapping.getFields().put(obfName(i) + ':' + desc, "field" + i);
+        }
+
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        boolean inherited = !superName.equals(OBJECT);
+        for (int i = 0; i < this.methods; i++) {
+            String desc = "(IL" + name + ";)L" + superName + ';';
+            mv = writer.visitMethod(ACC_PUBLIC, obfName(i), desc, null, null);
+            mv.visitCode();
+
+            if (this.fields > 0) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitFieldInsn(GETFIELD, name, obfName(0), "I");
+                mv.visitInsn(POP);
+            }
+
+            if (inherited) {
+                // Calls a method that is declared in one of the parents, this must be resolved through the hierarchy
+                mv.visitVarInsn(ALOAD, 0);
+                if (interfaces.length > 0) {
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, name, interfaceMethod(i), "(L" + interfaces[0] + ";)V", false);
+                } else {
+                    mv.visitMethodInsn(INVOKEVIRTUAL, name, obfName(this.methods), "()V", false);
+                }
+            }
+
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            mapping.getMethods().put(obfName(i) + desc, "method" + i);
+        }
+
+        // Implement the methods of the interfaces, or a common method that is called from the child classes
+        if (interfaces.length > 0) {
+            for (String iface : interfaces) {
+                for (int i = 0; i < this.methods; i++) {
+                    writeEmptyMethod(writer, interfaceMethod(i), "(L" + iface + ";)V");
+                }
+            }
+        } else {
+            writeEmptyMethod(writer, obfName(this.methods), "()V");
+            mapping.getMethods().put(obfName(this.methods) + "()V", "common");
+        }
+
+        writer.visitEnd();
+        write(out, mappings, name, deobfName, mapping, writer);
+    }
+
+    private static void writeEmptyMethod(ClassWriter writer, String name, String desc) {
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, name, desc, null, null);
+        mv.visitCode();
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void write(ZipOutputStream out, Map<String, MappedClass> mappings, String name, String deobfName, MappedClass mapping,
+            ClassWriter writer) throws IOException {
+        out.putNextEntry(new ZipEntry(name + ".class"));
+        out.write(writer.toByteArray());
+        mappings.put(deobfName, mapping);
+    }
+
+    private static String interfaceMethod(int index) {
+        return 'i' + obfName(index);
+    }
+
+    // a, b, ..., z, aa, ab, ...
+    static String obfName(int index) {
+        StringBuilder builder = new StringBuilder(4);
+        index++;
+        do {
+            index--;
+            builder.append((char) ('a' + index % 26));
+            index /= 26;
+        } while (index > 0);
+        return builder.reverse().toString();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("classes", this.classes)
+                .add("depth", this.depth)
+                .add("interfaces", this.interfaces)
+                .add("innerDepth", this.innerDepth)
+                .add("methods", this.methods)
+                .add("fields", this.fields)
+                .toString();
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * QuartzMappings
+ * Copyright (c) 2015, Minecrell <https://github.com/Minecrell>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.minecrell.quartz.mappings.transformer.perf;
+
+import net.minecrell.quartz.mappings.MappedClass;
+import net.minecrell.quartz.mappings.loader.Mappings;
+import net.minecrell.quartz.mappings.mapper.Mapper;
+import net.minecrell.quartz.mappings.transformer.MappingsTransformer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Deobfuscates generated jars of different sizes and compares the throughput with a recorded baseline
+public final class ThroughputTest {
+
+    private static final Map<String, JarGenerator> SIZES = new LinkedHashMap<>();
+
+    static {
+        SIZES.put("small", new JarGenerator(500, 3, 1, 1, 5, 3));
+        SIZES.put("medium", new JarGenerator(5000, 5, 2, 2, 10, 5));
+        SIZES.put("large", new JarGenerator(20000, 8, 3, 2, 15, 8));
+    }
+
+    private static final int WARMUP_RUNS = Integer.getInteger("perf.warmup", 3);
+    private static final int RUNS = Integer.getInteger("perf.runs", 5);
+
+    // Allowed slowdown compared to the baseline before the test fails
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("perf.tolerance", "0.25"));
+
+    private ThroughputTest() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ThroughputTest <baseline> [record]");
+            System.exit(2);
+            return;
+        }
+
+        Path baselinePath = Paths.get(args[0]);
+        boolean record = args.length > 1 && args[1].equals("record");
+
+        Properties baseline = new Properties();
+        if (Files.exists(baselinePath)) {
+            try (Reader reader = Files.newBufferedReader(baselinePath, StandardCharsets.UTF_8)) {
+                baseline.load(reader);
+            }
+        }
+
+        Path dir = Files.createTempDirectory("quartz-perf");
+        boolean failed = false;
+
+        try {
+            for (Map.Entry<String, JarGenerator> entry : SIZES.entrySet()) {
+                String size = entry.getKey();
+                JarGenerator generator = entry.getValue();
+
+                double throughput = run(dir, size, generator);
+
+                if (record) {
+                    baseline.setProperty(size, String.format("%.0f", throughput));
+                    System.out.printf("%-8s %10.0f classes/s (recorded)%n", size, throughput);
+                    continue;
+                }
+
+                String expected = baseline.getProperty(size);
+                if (expected == null) {
+                    System.out.printf("%-8s %10.0f classes/s (no baseline)%n", size, throughput);
+                    continue;
+                }
+
+                double min = Double.parseDouble(expected) * (1 - TOLERANCE);
+                boolean ok = throughput >= min;
+                System.out.printf("%-8s %10.0f classes/s (baseline %s, min %.0f) %s%n", size, throughput, expected, min, ok ? "OK" : "FAILED");
+                failed |= !ok;
+            }
+        } finally {
+            for (Path path : Files.newDirectoryStream(dir)) {
+                Files.delete(path);
+            }
+            Files.delete(dir);
+        }
+
+        if (record) {
+            try (Writer writer = Files.newBufferedWriter(baselinePath, StandardCharsets.UTF_8)) {
+                baseline.store(writer, "Deobfuscation throughput in classes per second");
+            }
+        } else if (failed) {
+            System.err.println("Throughput is below the recorded baseline");
+            System.exit(1);
+        }
+    }
+
+    private static double run(Path dir, String size, JarGenerator generator) throws IOException {
+        Path input = dir.resolve(size + ".jar");
+        Path output = dir.resolve(size + "-deobf.jar");
+
+        Map<String, MappedClass> mappings = generator.generate(input);
+
+        // Write and read the mappings again, like the mappings would be loaded normally
+        Path json = dir.resolve(size + ".json");
+        try (Writer writer = Files.newBufferedWriter(json, StandardCharsets.UTF_8)) {
+            Mappings.write(writer, mappings);
+        }
+
+        Mapper mapper;
+        try (Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8)) {
+            mapper = Mappings.createMapper(Mappings.read(reader));
+        }
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            MappingsTransformer.deobfuscate(input, output, mapper);
+        }
+
+        // Use the best run, it is the least affected by other processes on the machine
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            MappingsTransformer.deobfuscate(input, output, mapper);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return generator.getClassCount() / (best / 1e9);
+    }
+
+}